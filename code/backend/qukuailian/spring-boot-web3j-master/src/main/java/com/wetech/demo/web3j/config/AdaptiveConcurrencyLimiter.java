@@ -0,0 +1,336 @@
+package com.wetech.demo.web3j.config;
+
+import com.wetech.demo.web3j.diagnostics.JsonRpcEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.websocket.events.Notification;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link Web3jService} decorator that discovers how many concurrent JSON-RPC calls the node
+ * sustains. The limit grows additively while calls are fast and the limit is in use, and
+ * shrinks multiplicatively on 429s, timeouts and rate-limit errors or when latency climbs
+ * well above the best latency seen for that method. Bulk methods only count through errors:
+ * their latency follows the requested range (e.g. {@code eth_getLogs} chunk sizes) rather than
+ * node load. Calls over the limit wait in a priority
+ * queue so transaction, nonce and receipt calls overtake bulk reads. Every call is timed as a
+ * {@link JsonRpcEvent}, including its time in the queue.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter implements Web3jService, MeterBinder {
+
+    public enum Priority { CRITICAL, NORMAL, BULK }
+
+    private static final Set<String> CRITICAL_METHODS = Set.of(
+            "eth_sendRawTransaction", "eth_sendTransaction", "eth_getTransactionCount", "eth_getTransactionReceipt");
+
+    private static final Set<String> BULK_METHODS = Set.of(
+            "eth_getLogs", "eth_getFilterLogs", "eth_getFilterChanges");
+
+    private static final List<String> OVERLOAD_MARKERS = List.of(
+            "429", "503", "rate limit", "too many requests", "limit exceeded", "timeout", "timed out");
+
+    /**
+     * Re-probe the no-load latency of a method after this many samples, so it can recover
+     * from a value measured while the node was unusually idle
+     */
+    private static final int LATENCY_RESET_SAMPLES = 1000;
+
+    /**
+     * The most a re-probed no-load latency may rise over the previous one, so a window of
+     * uniformly slow calls cannot lock in a degraded baseline
+     */
+    private static final double LATENCY_MAX_RISE = 1.5;
+
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private final Web3jService delegate;
+    private final String name;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final int maxQueued;
+
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+    private final Map<String, MethodLatency> latencies = new HashMap<>();
+    private volatile double limit;
+    private volatile int inFlight;
+    private long sequence;
+
+    public AdaptiveConcurrencyLimiter(Web3jService delegate, String name, int initialLimit, int minLimit,
+                                      int maxLimit, double backoffRatio, double latencyTolerance, int maxQueued) {
+        this.delegate = delegate;
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.maxQueued = maxQueued;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("web3j.rpc.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive JSON-RPC concurrency limit")
+                .tag("client", name)
+                .register(registry);
+        Gauge.builder("web3j.rpc.inflight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .tag("client", name)
+                .register(registry);
+        Gauge.builder("web3j.rpc.queued", this, AdaptiveConcurrencyLimiter::getQueued)
+                .tag("client", name)
+                .register(registry);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * {@link Web3jService} declares {@code Request} and {@code Response} raw, and a parameterized
+     * signature would not override it; the request is only handled as {@code Request<?, ?>} below
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        String method = request.getMethod();
+        JsonRpcEvent event = JsonRpcEvent.begin(name, method);
+        try {
+            awaitPermit(priorityOf(method));
+        } catch (IOException e) {
+            event.finish(request, null, e);
+            throw e;
+        }
+        event.sent();
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        T response = null;
+        Throwable failure = null;
+        try {
+            response = delegate.send(request, responseType);
+            overloaded = isOverloaded(response);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            overloaded = isOverloaded(e);
+            failure = e;
+            throw e;
+        } finally {
+            release(method, System.nanoTime() - start, overloaded);
+            event.finish(request, response, failure);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        String method = request.getMethod();
+        JsonRpcEvent event = JsonRpcEvent.begin(name, method);
+        return acquire(priorityOf(method)).thenCompose(granted -> {
+            event.sent();
+            long start = System.nanoTime();
+            CompletableFuture<T> call;
+            try {
+                call = delegate.sendAsync(request, responseType);
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            return call.whenComplete((response, error) -> release(method, System.nanoTime() - start,
+                    error != null ? isOverloaded(error) : isOverloaded(response)));
+        }).whenComplete((response, error) -> event.finish(request, response, error));
+    }
+
+    @Override
+    public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+        JsonRpcEvent event = JsonRpcEvent.begin(name, "batch");
+        try {
+            awaitPermit(Priority.NORMAL);
+        } catch (IOException e) {
+            event.finish(null, null, e);
+            throw e;
+        }
+        event.sent();
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        Throwable failure = null;
+        try {
+            return delegate.sendBatch(batchRequest);
+        } catch (IOException | RuntimeException e) {
+            overloaded = isOverloaded(e);
+            failure = e;
+            throw e;
+        } finally {
+            release("batch", System.nanoTime() - start, overloaded);
+            event.finish(null, null, failure);
+        }
+    }
+
+    @Override
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batchRequest) {
+        JsonRpcEvent event = JsonRpcEvent.begin(name, "batch");
+        return acquire(Priority.NORMAL).thenCompose(granted -> {
+            event.sent();
+            long start = System.nanoTime();
+            CompletableFuture<BatchResponse> call;
+            try {
+                call = delegate.sendBatchAsync(batchRequest);
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            return call.whenComplete((response, error) ->
+                    release("batch", System.nanoTime() - start, error != null && isOverloaded(error)));
+        }).whenComplete((response, error) -> event.finish(null, null, error));
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public <T extends Notification<?>> Flowable<T> subscribe(Request request, String unsubscribeMethod,
+                                                            Class<T> responseType) {
+        return delegate.subscribe(request, unsubscribeMethod, responseType);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    static Priority priorityOf(String method) {
+        if (CRITICAL_METHODS.contains(method)) {
+            return Priority.CRITICAL;
+        }
+        return BULK_METHODS.contains(method) ? Priority.BULK : Priority.NORMAL;
+    }
+
+    private void awaitPermit(Priority priority) throws IOException {
+        try {
+            acquire(priority).join();
+        } catch (CompletionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private synchronized CompletableFuture<Void> acquire(Priority priority) {
+        if (queue.isEmpty() && inFlight < permits()) {
+            inFlight++;
+            return GRANTED;
+        }
+        if (queue.size() >= maxQueued) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "JSON-RPC queue of " + name + " is full (" + maxQueued + " calls waiting)"));
+        }
+        Waiter waiter = new Waiter(priority, sequence++, new CompletableFuture<>());
+        queue.add(waiter);
+        return waiter.permit();
+    }
+
+    private void release(String method, long latencyNanos, boolean overloaded) {
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            int inFlightAtCompletion = inFlight;
+            inFlight--;
+            adjust(method, latencyNanos, overloaded, inFlightAtCompletion);
+            while (!queue.isEmpty() && inFlight < permits()) {
+                inFlight++;
+                granted.add(queue.poll().permit());
+            }
+        }
+        granted.forEach(permit -> permit.complete(null));
+    }
+
+    private void adjust(String method, long latencyNanos, boolean overloaded, int inFlightAtCompletion) {
+        if (overloaded) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            log.warn("JSON-RPC node {} overloaded on {}, concurrency limit lowered to {}", name, method, getLimit());
+            return;
+        }
+        boolean bulk = priorityOf(method) == Priority.BULK;
+        MethodLatency latency = bulk ? null : latencies.computeIfAbsent(method, key -> new MethodLatency());
+        if (latency != null && isSlow(latency, latencyNanos)) {
+            limit = Math.max(minLimit, limit * 0.95);
+        } else if (inFlightAtCompletion >= limit / 2) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Record a latency sample and tell whether it is well above the method's no-load latency
+     */
+    private boolean isSlow(MethodLatency latency, long latencyNanos) {
+        latency.samples++;
+        if (latency.minNanos == 0 || latencyNanos < latency.minNanos) {
+            latency.minNanos = latencyNanos;
+        }
+        if (latency.windowMinNanos == 0 || latencyNanos < latency.windowMinNanos) {
+            latency.windowMinNanos = latencyNanos;
+        }
+        if (latency.samples % LATENCY_RESET_SAMPLES == 0) {
+            latency.minNanos = Math.min(latency.windowMinNanos, (long) (latency.minNanos * LATENCY_MAX_RISE));
+            latency.windowMinNanos = 0;
+        }
+        return latencyNanos > latency.minNanos * latencyTolerance;
+    }
+
+    private int permits() {
+        return Math.max(1, (int) limit);
+    }
+
+    private static boolean isOverloaded(Response<?> response) {
+        return response != null && response.hasError() && matchesOverload(response.getError().getMessage());
+    }
+
+    private static boolean isOverloaded(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof InterruptedIOException || matchesOverload(cause.getMessage());
+    }
+
+    private static boolean matchesOverload(String message) {
+        if (message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        return OVERLOAD_MARKERS.stream().anyMatch(lower::contains);
+    }
+
+    private record Waiter(Priority priority, long sequence, CompletableFuture<Void> permit) {
+    }
+
+    private static final class MethodLatency {
+        private long minNanos;
+        /**
+         * The lowest latency of the current window of {@link #LATENCY_RESET_SAMPLES} samples
+         */
+        private long windowMinNanos;
+        private long samples;
+    }
+}
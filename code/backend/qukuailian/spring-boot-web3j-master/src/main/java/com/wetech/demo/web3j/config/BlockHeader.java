@@ -0,0 +1,23 @@
+package com.wetech.demo.web3j.config;
+
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.math.BigInteger;
+
+/**
+ * The subset of a block header tracked by {@link ChainHeadTracker}
+ * @param baseFee the EIP-1559 base fee, null on pre-London chains
+ */
+public record BlockHeader(long number, String hash, String parentHash, BigInteger baseFee,
+                          String logsBloom, long timestamp) {
+
+    public static BlockHeader of(EthBlock.Block block) {
+        return new BlockHeader(
+                block.getNumber().longValueExact(),
+                block.getHash(),
+                block.getParentHash(),
+                block.getBaseFeePerGasRaw() != null ? block.getBaseFeePerGas() : null,
+                block.getLogsBloom(),
+                block.getTimestamp().longValueExact());
+    }
+}
@@ -0,0 +1,219 @@
+package com.wetech.demo.web3j.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Follows the chain head with a single {@code eth_getBlockByNumber("latest")} poll, keeps the
+ * most recent headers in a ring buffer and publishes {@link NewHeadEvent}/{@link ChainReorgEvent}
+ * to in-process listeners, so features that need the head share one RPC stream.
+ * Listeners run on the tracker thread and should hand off anything slow.
+ * <p>
+ * When the head jumps by more than {@code max-catch-up} blocks, e.g. after an RPC outage, the
+ * tracker catches up in steps of that many blocks fetched by number, so no block is skipped.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChainHeadTracker {
+
+    private final Web3j web3j;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${web3j.head-tracker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${web3j.head-tracker.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${web3j.head-tracker.history-size:256}")
+    private int historySize;
+
+    @Value("${web3j.head-tracker.max-catch-up:64}")
+    private int maxCatchUp;
+
+    private AtomicReferenceArray<BlockHeader> history;
+    private volatile BlockHeader head;
+    private long firstNumber;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        history = new AtomicReferenceArray<>(historySize);
+        if (maxCatchUp < 1) {
+            throw new IllegalStateException("web3j.head-tracker.max-catch-up must be at least 1");
+        }
+        if (!enabled) {
+            log.info("Chain head tracker disabled");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chain-head-tracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::pollSafely, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the latest known canonical header
+     * @return the head, empty until the first poll succeeded
+     */
+    public Optional<BlockHeader> getHead() {
+        return Optional.ofNullable(head);
+    }
+
+    /**
+     * Get the latest known block number
+     * @return the head number, or -1 until the first poll succeeded
+     */
+    public long getHeadNumber() {
+        BlockHeader current = head;
+        return current != null ? current.number() : -1;
+    }
+
+    /**
+     * Get a recent canonical header from the ring buffer
+     * @param number the block number
+     * @return the header, empty if it is ahead of the head or older than the buffer
+     */
+    public Optional<BlockHeader> getHeader(long number) {
+        BlockHeader current = head;
+        if (current == null || number > current.number() || number < 0) {
+            return Optional.empty();
+        }
+        BlockHeader header = history.get(slot(number));
+        return header != null && header.number() == number ? Optional.of(header) : Optional.empty();
+    }
+
+    /**
+     * Get the number of blocks built on top of the given one
+     * @param number the block number
+     * @return the confirmation count, or -1 if the head is not known yet
+     */
+    public long getConfirmations(long number) {
+        long headNumber = getHeadNumber();
+        return headNumber < 0 ? -1 : Math.max(0, headNumber - number + 1);
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (Exception e) {
+            log.warn("Failed to poll chain head: {}", e.getMessage());
+        }
+    }
+
+    private void poll() throws IOException {
+        EthBlock.Block latest = web3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).send().getBlock();
+        if (latest == null) {
+            return;
+        }
+        BlockHeader newHead = BlockHeader.of(latest);
+        BlockHeader current = head;
+        if (current == null) {
+            firstNumber = newHead.number();
+            advance(-1, List.of(newHead));
+            return;
+        }
+        if (newHead.number() < current.number() - historySize || isKnown(newHead)) {
+            // A lagging or load-balanced node reporting a block we already have is not a reorg
+            return;
+        }
+        boolean behind = newHead.number() > current.number() + maxCatchUp;
+        if (behind) {
+            EthBlock.Block step = web3j.ethGetBlockByNumber(
+                    DefaultBlockParameter.valueOf(BigInteger.valueOf(current.number() + maxCatchUp)), false)
+                    .send().getBlock();
+            if (step == null) {
+                return;
+            }
+            newHead = BlockHeader.of(step);
+        }
+
+        // Walk back by parent hash until the new segment links onto a header we already know,
+        // at most as far back as the ring buffer reaches; a segment reaching back to the first
+        // tracked block replaces everything known
+        List<BlockHeader> segment = new ArrayList<>();
+        segment.add(newHead);
+        BlockHeader cursor = newHead;
+        long oldestKnown = Math.max(firstNumber, current.number() - historySize + 1);
+        while (!linksToHistory(cursor) && cursor.number() > oldestKnown) {
+            EthBlock.Block parent = web3j.ethGetBlockByHash(cursor.parentHash(), false).send().getBlock();
+            if (parent == null) {
+                break;
+            }
+            cursor = BlockHeader.of(parent);
+            segment.add(cursor);
+        }
+        if (!linksToHistory(cursor) && cursor.number() != firstNumber) {
+            log.warn("Could not link blocks {} to {} to the known chain up to {}, retrying", cursor.number(),
+                    newHead.number(), current.number());
+            return;
+        }
+        Collections.reverse(segment);
+        advance(segment.get(0).number() - 1, segment);
+        if (behind) {
+            log.info("Catching up with the chain head, at block {}", head.number());
+            scheduler.execute(this::pollSafely);
+        }
+    }
+
+    private boolean isKnown(BlockHeader header) {
+        return getHeader(header.number()).map(known -> known.hash().equals(header.hash())).orElse(false);
+    }
+
+    private boolean linksToHistory(BlockHeader header) {
+        return getHeader(header.number() - 1).map(parent -> parent.hash().equals(header.parentHash())).orElse(false);
+    }
+
+    private void advance(long forkNumber, List<BlockHeader> segment) {
+        BlockHeader current = head;
+        if (current != null && forkNumber < current.number()) {
+            List<BlockHeader> dropped = new ArrayList<>();
+            for (long number = forkNumber + 1; number <= current.number(); number++) {
+                getHeader(number).ifPresent(dropped::add);
+                history.set(slot(number), null);
+            }
+            log.warn("Chain reorg detected: {} block(s) after {} dropped", dropped.size(), forkNumber);
+            eventPublisher.publishEvent(new ChainReorgEvent(forkNumber, dropped));
+        }
+        for (BlockHeader header : segment) {
+            history.set(slot(header.number()), header);
+            head = header;
+            eventPublisher.publishEvent(new NewHeadEvent(header));
+        }
+        log.debug("Chain head at block {} ({})", head.number(), head.hash());
+    }
+
+    private int slot(long number) {
+        return (int) Math.floorMod(number, (long) historySize);
+    }
+}
@@ -0,0 +1,12 @@
+package com.wetech.demo.web3j.config;
+
+import java.util.List;
+
+/**
+ * Published by {@link ChainHeadTracker} when previously announced blocks drop out of the
+ * canonical chain; the replacement blocks follow as {@link NewHeadEvent}s
+ * @param forkNumber the last block shared by the old and the new chain
+ * @param dropped the orphaned headers, oldest first
+ */
+public record ChainReorgEvent(long forkNumber, List<BlockHeader> dropped) {
+}
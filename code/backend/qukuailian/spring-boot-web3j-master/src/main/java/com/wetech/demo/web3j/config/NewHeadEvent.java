@@ -0,0 +1,8 @@
+package com.wetech.demo.web3j.config;
+
+/**
+ * Published by {@link ChainHeadTracker} for every block that becomes part of the canonical
+ * chain, in block order
+ */
+public record NewHeadEvent(BlockHeader header) {
+}
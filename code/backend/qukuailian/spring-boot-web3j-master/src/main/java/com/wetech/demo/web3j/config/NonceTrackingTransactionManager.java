@@ -0,0 +1,631 @@
+package com.wetech.demo.web3j.config;
+
+import com.wetech.demo.web3j.diagnostics.ChainCallEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthGetCode;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.exceptions.TransactionException;
+import org.web3j.tx.FastRawTransactionManager;
+import org.web3j.tx.TransactionManager;
+import org.web3j.tx.exceptions.TxHashMismatchException;
+import org.web3j.tx.response.TransactionReceiptProcessor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transaction manager shared by all contract wrappers of the signer. Nonces are handed out
+ * from a local counter instead of asking the node for the pending count on every transaction,
+ * which lets callers reserve a contiguous nonce range and pipeline transactions.
+ * <p>
+ * Transactions are queued by {@link Lane} and assigned nonces by a single dispatcher, which
+ * stops handing out nonces while {@code maxPending} transactions are unmined, so a backlog of
+ * bulk work cannot push user-facing transactions to the back of the nonce sequence. On every
+ * new head, the lowest unmined nonce is re-signed with a higher gas price once it has not been
+ * mined for {@code stuckBlocks} blocks; later nonces are only waiting on it and are left alone
+ * unless they are priced below the base fee. Receipts are looked up across all replacements.
+ * Submissions fail instead of waiting for capacity beyond {@code capacityTimeoutMs}, or at once
+ * while the lowest nonce is stuck with no replacements left.
+ * <p>
+ * Fee bumping and the gas price cap work on legacy gas prices only, so EIP-1559 transactions are
+ * rejected rather than sent past the queue with a nonce the dispatcher does not know about.
+ * <p>
+ * The queue, nonce, signing, broadcast and receipt-wait phases of every transaction are timed
+ * as {@link ChainCallEvent}s.
+ */
+@Slf4j
+public class NonceTrackingTransactionManager extends FastRawTransactionManager {
+
+    private static final List<String> ALREADY_MINED_MARKERS = List.of(
+            "nonce too low",
+            "already known",
+            "known transaction");
+
+    private final Web3j web3j;
+    private final ChainHeadTracker headTracker;
+    private final Settings settings;
+    private final PendingTransactions pending;
+    private final PriorityBlockingQueue<Submission> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparing(Submission::lane).thenComparingLong(Submission::sequence));
+    private final AtomicLong sequence = new AtomicLong();
+    private final Object capacity = new Object();
+    /**
+     * Outstanding nonce reservations, first nonce to end (exclusive); guarded by this
+     */
+    private final TreeMap<BigInteger, BigInteger> reservations = new TreeMap<>();
+
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tx-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService feeBumper = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tx-fee-bumper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean running;
+    /**
+     * The lowest unmined nonce while it is stuck and will not be replaced again, else null
+     */
+    private volatile BigInteger stalledNonce;
+
+    public NonceTrackingTransactionManager(Web3j web3j, Credentials credentials,
+                                           ChainHeadTracker headTracker, Settings settings) {
+        this(web3j, credentials, headTracker, settings, new PendingTransactions());
+    }
+
+    private NonceTrackingTransactionManager(Web3j web3j, Credentials credentials, ChainHeadTracker headTracker,
+                                            Settings settings, PendingTransactions pending) {
+        super(web3j, credentials, new ReplacementAwareReceiptProcessor(web3j, pending, settings));
+        this.web3j = web3j;
+        this.headTracker = headTracker;
+        this.settings = settings;
+        this.pending = pending;
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        dispatcher.execute(this::dispatchLoop);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        dispatcher.shutdownNow();
+        feeBumper.shutdownNow();
+        Submission submission;
+        while ((submission = queue.poll()) != null) {
+            submission.queued().finish(false);
+            submission.result().completeExceptionally(new IOException("Transaction manager shut down"));
+        }
+    }
+
+    /**
+     * A view of this manager that queues its transactions in the given lane. Load contract
+     * wrappers with it to give their transactions that priority.
+     */
+    public TransactionManager forLane(Lane lane) {
+        return new LaneTransactionManager(lane);
+    }
+
+    /**
+     * Reserve a contiguous range of nonces for transactions the caller signs itself. The range
+     * is never handed out again, even after a {@link #resync()}, until it is released.
+     * @param count the number of nonces to reserve
+     * @return the first reserved nonce
+     */
+    public synchronized BigInteger reserveNonces(int count) throws IOException {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        ChainCallEvent event = ChainCallEvent.begin(ChainCallEvent.Phase.NONCE).operation("nonce.reserve");
+        BigInteger first;
+        try {
+            first = getNonce();
+        } catch (IOException | RuntimeException e) {
+            event.finish(false);
+            throw e;
+        }
+        BigInteger end = first.add(BigInteger.valueOf(count));
+        setNonce(end.subtract(BigInteger.ONE));
+        reservations.put(first, end);
+        event.detail("nonces " + first + " to " + getCurrentNonce()).finish(true);
+        log.debug("Reserved nonces {} to {}", first, getCurrentNonce());
+        return first;
+    }
+
+    /**
+     * Release a reservation once its transactions are broadcast or abandoned. Abandoned nonces
+     * are handed out again after the next {@link #resync()}.
+     * @param first the first nonce of the reservation
+     */
+    public synchronized void releaseNonces(BigInteger first) {
+        reservations.remove(first);
+    }
+
+    /**
+     * Sign and broadcast a transaction with an already reserved nonce and watch it for fee bumping
+     */
+    public EthSendTransaction sendReserved(RawTransaction transaction) throws IOException {
+        EthSendTransaction response = signAndSend(transaction);
+        if (!response.hasError()) {
+            pending.track(transaction, response.getTransactionHash(), headTracker.getHeadNumber());
+        }
+        return response;
+    }
+
+    /**
+     * Look up the receipt of a transaction, following any fee-bumped replacements of it
+     */
+    public Optional<TransactionReceipt> findReceipt(String transactionHash) throws IOException {
+        return findReceipt(web3j, pending, transactionHash);
+    }
+
+    /**
+     * The number of broadcast transactions that are not known to be mined yet
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public EthSendTransaction sendTransaction(BigInteger gasPrice, BigInteger gasLimit, String to, String data,
+                                              BigInteger value, boolean constructor) throws IOException {
+        return submit(Lane.NORMAL, gasPrice, gasLimit, to, data, value);
+    }
+
+    @Override
+    public EthSendTransaction sendEIP1559Transaction(long chainId, BigInteger maxPriorityFeePerGas,
+                                                     BigInteger maxFeePerGas, BigInteger gasLimit, String to,
+                                                     String data, BigInteger value, boolean constructor) {
+        throw eip1559Unsupported();
+    }
+
+    /**
+     * The next nonce, skipping ranges reserved by {@link #reserveNonces} that the counter
+     * reaches again after a re-sync
+     */
+    @Override
+    protected synchronized BigInteger getNonce() throws IOException {
+        BigInteger nonce = super.getNonce();
+        BigInteger next = nonce;
+        Map.Entry<BigInteger, BigInteger> reserved = reservations.floorEntry(next);
+        while (reserved != null && next.compareTo(reserved.getValue()) < 0) {
+            next = reserved.getValue();
+            reserved = reservations.floorEntry(next);
+        }
+        if (!next.equals(nonce)) {
+            setNonce(next);
+        }
+        return next;
+    }
+
+    @Override
+    public String sign(RawTransaction rawTransaction) {
+        ChainCallEvent event = ChainCallEvent.begin(ChainCallEvent.Phase.SIGN).transaction(rawTransaction);
+        String signed = super.sign(rawTransaction);
+        event.finish(true);
+        return signed;
+    }
+
+    /**
+     * Same as {@link org.web3j.tx.RawTransactionManager#signAndSend}, split so that signing is
+     * recorded as SIGN and only the node round trip as BROADCAST
+     */
+    @Override
+    public EthSendTransaction signAndSend(RawTransaction rawTransaction) throws IOException {
+        String signed = sign(rawTransaction);
+        ChainCallEvent event = ChainCallEvent.begin(ChainCallEvent.Phase.BROADCAST).transaction(rawTransaction)
+                .detail("nonce " + rawTransaction.getNonce());
+        EthSendTransaction response = null;
+        try {
+            response = web3j.ethSendRawTransaction(signed).send();
+            if (response != null && !response.hasError()) {
+                String localHash = Hash.sha3(signed);
+                if (!txHashVerifier.verify(localHash, response.getTransactionHash())) {
+                    throw new TxHashMismatchException(localHash, response.getTransactionHash());
+                }
+            }
+            return response;
+        } finally {
+            if (response != null) {
+                event.transactionHash(response.getTransactionHash());
+            }
+            event.finish(response != null && !response.hasError());
+        }
+    }
+
+    /**
+     * Drop the local counter after a rejected transaction so the next one re-reads the
+     * pending nonce from the node instead of leaving a gap. Reserved ranges stay reserved.
+     */
+    public synchronized void resync() {
+        log.warn("Resetting local nonce counter of {}", getFromAddress());
+        clearNonce();
+    }
+
+    @EventListener
+    public void onNewHead(NewHeadEvent event) {
+        if (pending.size() > 0) {
+            feeBumper.execute(() -> checkPending(event.header()));
+        }
+    }
+
+    private EthSendTransaction submit(Lane lane, BigInteger gasPrice, BigInteger gasLimit, String to,
+                                      String data, BigInteger value) throws IOException {
+        if (!running) {
+            throw new IOException("Transaction manager is not running");
+        }
+        ChainCallEvent queued = ChainCallEvent.begin(ChainCallEvent.Phase.QUEUE)
+                .contract(to).detail(lane.name());
+        Submission submission = new Submission(lane, sequence.getAndIncrement(), System.nanoTime(),
+                gasPrice, gasLimit, to, data, value, queued, new CompletableFuture<>());
+        queue.add(submission);
+        try {
+            return submission.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (queue.remove(submission)) {
+                submission.queued().finish(false);
+            }
+            throw new InterruptedIOException("Interrupted while waiting for dispatch");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Submission submission;
+            try {
+                awaitCapacity();
+                submission = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            BigInteger stalled = stalledNonce;
+            if (stalled != null) {
+                // Below capacity too: a new nonce would only queue up behind the stuck one
+                submission.queued().finish(false);
+                submission.result().completeExceptionally(stalledFailure(stalled));
+                continue;
+            }
+            if (pending.size() >= settings.maxPending()) {
+                // Capacity ran out while waiting for a submission; requeue it at its original position
+                queue.add(submission);
+                continue;
+            }
+            submission.queued().finish(true);
+            try {
+                submission.result().complete(dispatch(submission));
+            } catch (IOException | RuntimeException e) {
+                resync();
+                submission.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    private EthSendTransaction dispatch(Submission submission) throws IOException {
+        ChainCallEvent nonceEvent = ChainCallEvent.begin(ChainCallEvent.Phase.NONCE).contract(submission.to());
+        BigInteger nonce;
+        try {
+            nonce = getNonce();
+        } catch (IOException | RuntimeException e) {
+            nonceEvent.finish(false);
+            throw e;
+        }
+        nonceEvent.detail("nonce " + nonce).finish(true);
+        RawTransaction transaction = RawTransaction.createTransaction(nonce, submission.gasPrice(),
+                submission.gasLimit(), submission.to(), submission.value(), submission.data());
+        EthSendTransaction response = signAndSend(transaction);
+        if (response.hasError()) {
+            resync();
+        } else {
+            pending.track(transaction, response.getTransactionHash(), headTracker.getHeadNumber());
+        }
+        return response;
+    }
+
+    private void awaitCapacity() throws InterruptedException {
+        synchronized (capacity) {
+            while (pending.size() >= settings.maxPending()) {
+                failWaiting();
+                // Timed wait: receipts found by other processes also free capacity
+                capacity.wait(1000);
+            }
+        }
+    }
+
+    /**
+     * Fail the queued submissions that cannot expect capacity in time
+     */
+    private void failWaiting() {
+        BigInteger stalled = stalledNonce;
+        long now = System.nanoTime();
+        List<Submission> expired = new ArrayList<>();
+        queue.removeIf(submission -> {
+            boolean fail = stalled != null
+                    || TimeUnit.NANOSECONDS.toMillis(now - submission.submittedAt()) >= settings.capacityTimeoutMs();
+            if (fail) {
+                expired.add(submission);
+            }
+            return fail;
+        });
+        for (Submission submission : expired) {
+            submission.queued().finish(false);
+            submission.result().completeExceptionally(stalled != null ? stalledFailure(stalled)
+                    : new IOException("No capacity after " + settings.capacityTimeoutMs() + " ms, "
+                    + pending.size() + " transactions pending"));
+        }
+    }
+
+    private IOException stalledFailure(BigInteger stalled) {
+        return new IOException("Transaction with nonce " + stalled + " is stuck and no longer replaced, "
+                + pending.size() + " transactions pending");
+    }
+
+    private static UnsupportedOperationException eip1559Unsupported() {
+        return new UnsupportedOperationException(
+                "EIP-1559 transactions are not supported, use a legacy gas price provider");
+    }
+
+    private void releaseCapacity() {
+        synchronized (capacity) {
+            capacity.notifyAll();
+        }
+    }
+
+    private void checkPending(BlockHeader header) {
+        long headNumber = header.number();
+        BigInteger confirmed;
+        try {
+            confirmed = web3j.ethGetTransactionCount(getFromAddress(), DefaultBlockParameterName.LATEST)
+                    .send().getTransactionCount();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read confirmed nonce of {}: {}", getFromAddress(), e.getMessage());
+            return;
+        }
+        pending.confirmBelow(confirmed);
+        releaseCapacity();
+        BigInteger stalled = null;
+        boolean lowest = true;
+        for (PendingTransactions.PendingTransaction transaction : pending.all()) {
+            boolean next = lowest;
+            lowest = false;
+            if (transaction.sentAtBlock() < 0) {
+                // Sent before the head tracker knew the chain
+                transaction.restartClock(headNumber);
+            } else if (headNumber - transaction.sentAtBlock() < settings.stuckBlocks()) {
+                continue;
+            } else if (next || isBelowBaseFee(transaction.transaction(), header.baseFee())) {
+                if (!bump(transaction, headNumber) && next) {
+                    stalled = transaction.transaction().getNonce();
+                }
+            } else {
+                // Only waiting on the nonces below; its clock starts once it is next in line
+                transaction.restartClock(headNumber);
+            }
+        }
+        if (stalled != null && !stalled.equals(stalledNonce)) {
+            log.error("Transaction with nonce {} is stuck and will not be replaced again, "
+                    + "new transactions fail while {} are pending", stalled, pending.size());
+        }
+        stalledNonce = stalled;
+        if (stalled != null) {
+            releaseCapacity();
+        }
+    }
+
+    /**
+     * Replace a stuck transaction with a higher gas price
+     * @return false if it will not be replaced again
+     */
+    private boolean bump(PendingTransactions.PendingTransaction transaction, long headNumber) {
+        RawTransaction stuck = transaction.transaction();
+        if (transaction.bumps() >= settings.maxBumps()) {
+            return false;
+        }
+        BigInteger gasPrice = stuck.getGasPrice().multiply(BigInteger.valueOf(100 + settings.bumpPercent()))
+                .divide(BigInteger.valueOf(100))
+                .max(stuck.getGasPrice().add(BigInteger.ONE));
+        if (gasPrice.compareTo(settings.maxGasPrice()) > 0) {
+            log.warn("Transaction with nonce {} is stuck but bumping to {} would exceed the gas price cap",
+                    stuck.getNonce(), gasPrice);
+            transaction.restartClock(headNumber);
+            return false;
+        }
+        long stuckSince = transaction.sentAtBlock();
+        RawTransaction replacement = RawTransaction.createTransaction(stuck.getNonce(), gasPrice,
+                stuck.getGasLimit(), stuck.getTo(), stuck.getValue(), stuck.getData());
+        try {
+            EthSendTransaction response = signAndSend(replacement);
+            if (response.hasError()) {
+                String message = response.getError().getMessage();
+                if (!isAlreadyMined(message)) {
+                    log.warn("Replacing transaction with nonce {} failed: {}", stuck.getNonce(), message);
+                }
+                transaction.restartClock(headNumber);
+                return true;
+            }
+            pending.replace(transaction, replacement, response.getTransactionHash(), headNumber);
+            log.info("Replaced transaction with nonce {} stuck since block {}: gas price {} -> {} (tx {})",
+                    stuck.getNonce(), stuckSince, stuck.getGasPrice(), gasPrice,
+                    response.getTransactionHash());
+        } catch (IOException e) {
+            log.warn("Replacing transaction with nonce {} failed: {}", stuck.getNonce(), e.getMessage());
+        }
+        return true;
+    }
+
+    private static boolean isBelowBaseFee(RawTransaction transaction, BigInteger baseFee) {
+        return baseFee != null && transaction.getGasPrice() != null && transaction.getGasPrice().compareTo(baseFee) < 0;
+    }
+
+    private static boolean isAlreadyMined(String message) {
+        if (message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        return ALREADY_MINED_MARKERS.stream().anyMatch(lower::contains);
+    }
+
+    private static Optional<TransactionReceipt> findReceipt(Web3j web3j, PendingTransactions pending,
+                                                            String transactionHash) throws IOException {
+        for (String hash : pending.hashChain(transactionHash)) {
+            Optional<TransactionReceipt> receipt = web3j.ethGetTransactionReceipt(hash).send().getTransactionReceipt();
+            if (receipt.isPresent()) {
+                pending.confirm(hash);
+                return receipt;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Transaction priority; lower ordinals get nonces first
+     */
+    public enum Lane {
+        /** Transactions a user is waiting on */
+        HIGH,
+        NORMAL,
+        /** Background and batch work such as minting */
+        BULK
+    }
+
+    /**
+     * @param maxPending unmined transactions after which new nonces are held back
+     * @param stuckBlocks blocks a transaction may stay unmined before it is replaced
+     * @param bumpPercent gas price increase per replacement (nodes require at least 10)
+     * @param maxBumps replacements per nonce before giving up
+     * @param maxGasPrice gas price a replacement never exceeds
+     * @param receiptPollMs interval between receipt lookups
+     * @param receiptAttempts receipt lookups before giving up
+     * @param capacityTimeoutMs how long a submission may wait for capacity before it fails
+     */
+    public record Settings(int maxPending, int stuckBlocks, int bumpPercent, int maxBumps,
+                           BigInteger maxGasPrice, long receiptPollMs, int receiptAttempts,
+                           long capacityTimeoutMs) {
+    }
+
+    private record Submission(Lane lane, long sequence, long submittedAt, BigInteger gasPrice, BigInteger gasLimit, String to,
+                              String data, BigInteger value, ChainCallEvent queued,
+                              CompletableFuture<EthSendTransaction> result) {
+    }
+
+    private class LaneTransactionManager extends TransactionManager {
+
+        private final Lane lane;
+
+        LaneTransactionManager(Lane lane) {
+            super(new ReplacementAwareReceiptProcessor(web3j, pending, settings),
+                    NonceTrackingTransactionManager.this.getFromAddress());
+            this.lane = lane;
+        }
+
+        @Override
+        public EthSendTransaction sendTransaction(BigInteger gasPrice, BigInteger gasLimit, String to, String data,
+                                                  BigInteger value, boolean constructor) throws IOException {
+            return submit(lane, gasPrice, gasLimit, to, data, value);
+        }
+
+        @Override
+        public EthSendTransaction sendEIP1559Transaction(long chainId, BigInteger maxPriorityFeePerGas,
+                                                         BigInteger maxFeePerGas, BigInteger gasLimit, String to,
+                                                         String data, BigInteger value, boolean constructor) {
+            throw eip1559Unsupported();
+        }
+
+        @Override
+        public String sendCall(String to, String data, DefaultBlockParameter defaultBlockParameter)
+                throws IOException {
+            return NonceTrackingTransactionManager.this.sendCall(to, data, defaultBlockParameter);
+        }
+
+        @Override
+        public EthGetCode getCode(String contractAddress, DefaultBlockParameter defaultBlockParameter)
+                throws IOException {
+            return NonceTrackingTransactionManager.this.getCode(contractAddress, defaultBlockParameter);
+        }
+    }
+
+    /**
+     * Polls for a receipt under every hash the transaction has been sent with
+     */
+    private static class ReplacementAwareReceiptProcessor extends TransactionReceiptProcessor {
+
+        private final Web3j web3j;
+        private final PendingTransactions pending;
+        private final Settings settings;
+
+        ReplacementAwareReceiptProcessor(Web3j web3j, PendingTransactions pending, Settings settings) {
+            super(web3j);
+            this.web3j = web3j;
+            this.pending = pending;
+            this.settings = settings;
+        }
+
+        @Override
+        public TransactionReceipt waitForTransactionReceipt(String transactionHash)
+                throws IOException, TransactionException {
+            ChainCallEvent event = ChainCallEvent.begin(ChainCallEvent.Phase.RECEIPT_WAIT)
+                    .transactionHash(transactionHash);
+            int polls = 0;
+            boolean found = false;
+            try {
+                while (polls < settings.receiptAttempts()) {
+                    Optional<TransactionReceipt> receipt = findReceipt(web3j, pending, transactionHash);
+                    polls++;
+                    if (receipt.isPresent()) {
+                        found = true;
+                        event.contract(receipt.get().getTo() != null
+                                ? receipt.get().getTo() : receipt.get().getContractAddress());
+                        return receipt.get();
+                    }
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(settings.receiptPollMs());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new TransactionException(e);
+                    }
+                }
+            } finally {
+                event.detail(polls + " poll(s)").finish(found);
+            }
+            throw new TransactionException("Transaction receipt was not generated after "
+                    + settings.receiptAttempts() * settings.receiptPollMs() / 1000
+                    + " seconds for transaction: " + transactionHash, transactionHash);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.wetech.demo.web3j.config;
+
+import org.web3j.crypto.RawTransaction;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The signer's broadcast but unmined transactions, keyed by nonce, with every hash a nonce
+ * has been sent under. Hash chains of recently mined nonces are kept a little longer so a
+ * receipt lookup that started with a replaced hash can still resolve.
+ */
+class PendingTransactions {
+
+    private static final int RECENT_CHAINS = 10_000;
+
+    private final ConcurrentSkipListMap<BigInteger, PendingTransaction> byNonce = new ConcurrentSkipListMap<>();
+    private final Map<String, PendingTransaction> byHash = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> recentChains = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                    return size() > RECENT_CHAINS;
+                }
+            });
+
+    void track(RawTransaction transaction, String hash, long sentAtBlock) {
+        PendingTransaction pending = new PendingTransaction(transaction, hash, sentAtBlock);
+        byNonce.put(transaction.getNonce(), pending);
+        byHash.put(hash, pending);
+    }
+
+    void replace(PendingTransaction pending, RawTransaction replacement, String hash, long sentAtBlock) {
+        pending.transaction = replacement;
+        pending.hashes.add(hash);
+        pending.sentAtBlock = sentAtBlock;
+        pending.bumps++;
+        byHash.put(hash, pending);
+    }
+
+    /**
+     * Every hash the transaction of the given hash was sent under, oldest first
+     */
+    List<String> hashChain(String hash) {
+        PendingTransaction pending = byHash.get(hash);
+        if (pending != null) {
+            return pending.hashes;
+        }
+        return recentChains.getOrDefault(hash, List.of(hash));
+    }
+
+    /**
+     * Forget all transactions below the confirmed nonce count
+     */
+    void confirmBelow(BigInteger confirmedNonce) {
+        Map<BigInteger, PendingTransaction> mined = byNonce.headMap(confirmedNonce);
+        mined.values().forEach(this::forget);
+        mined.clear();
+    }
+
+    void confirm(String hash) {
+        PendingTransaction pending = byHash.get(hash);
+        if (pending != null) {
+            byNonce.remove(pending.transaction.getNonce(), pending);
+            forget(pending);
+        }
+    }
+
+    Collection<PendingTransaction> all() {
+        return byNonce.values();
+    }
+
+    int size() {
+        return byNonce.size();
+    }
+
+    private void forget(PendingTransaction pending) {
+        for (String hash : pending.hashes) {
+            byHash.remove(hash);
+            recentChains.put(hash, pending.hashes);
+        }
+    }
+
+    static final class PendingTransaction {
+        private final List<String> hashes = new CopyOnWriteArrayList<>();
+        private volatile RawTransaction transaction;
+        private volatile long sentAtBlock;
+        private volatile int bumps;
+
+        private PendingTransaction(RawTransaction transaction, String hash, long sentAtBlock) {
+            this.transaction = transaction;
+            this.sentAtBlock = sentAtBlock;
+            this.hashes.add(hash);
+        }
+
+        RawTransaction transaction() {
+            return transaction;
+        }
+
+        long sentAtBlock() {
+            return sentAtBlock;
+        }
+
+        void restartClock(long block) {
+            sentAtBlock = block;
+        }
+
+        int bumps() {
+            return bumps;
+        }
+    }
+}
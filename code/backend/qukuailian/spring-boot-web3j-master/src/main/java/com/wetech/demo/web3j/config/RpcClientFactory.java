@@ -0,0 +1,49 @@
+package com.wetech.demo.web3j.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+
+/**
+ * Builds {@link Web3j} clients whose JSON-RPC traffic goes through an {@link AdaptiveConcurrencyLimiter}
+ */
+@Component
+@RequiredArgsConstructor
+public class RpcClientFactory {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${web3j.rpc.initial-concurrency:16}")
+    private int initialConcurrency;
+
+    @Value("${web3j.rpc.min-concurrency:1}")
+    private int minConcurrency;
+
+    @Value("${web3j.rpc.max-concurrency:256}")
+    private int maxConcurrency;
+
+    @Value("${web3j.rpc.backoff-ratio:0.7}")
+    private double backoffRatio;
+
+    @Value("${web3j.rpc.latency-tolerance:3.0}")
+    private double latencyTolerance;
+
+    @Value("${web3j.rpc.max-queued:10000}")
+    private int maxQueued;
+
+    /**
+     * Create a rate-adaptive client for an endpoint
+     * @param name the client name used to tag its metrics
+     * @param endpoint the JSON-RPC endpoint URL
+     * @return the client
+     */
+    public Web3j create(String name, String endpoint) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new HttpService(endpoint), name,
+                initialConcurrency, minConcurrency, maxConcurrency, backoffRatio, latencyTolerance, maxQueued);
+        limiter.bindTo(meterRegistry);
+        return Web3j.build(limiter);
+    }
+}
@@ -6,7 +6,6 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
 import org.web3j.tx.gas.ContractGasProvider;
 import org.web3j.tx.gas.StaticGasProvider;
 
@@ -28,10 +27,34 @@ public class Web3jConfig {
     @Value("${web3j.gas-limit:6721975}")
     private String gasLimit;
 
+    @Value("${web3j.tx.max-pending:64}")
+    private int maxPending;
+
+    @Value("${web3j.tx.stuck-blocks:5}")
+    private int stuckBlocks;
+
+    @Value("${web3j.tx.bump-percent:12}")
+    private int bumpPercent;
+
+    @Value("${web3j.tx.max-bumps:5}")
+    private int maxBumps;
+
+    @Value("${web3j.tx.max-gas-price:500000000000}")
+    private String maxGasPrice;
+
+    @Value("${web3j.tx.receipt-poll-ms:1000}")
+    private long receiptPollMs;
+
+    @Value("${web3j.tx.receipt-attempts:600}")
+    private int receiptAttempts;
+
+    @Value("${web3j.tx.capacity-timeout-ms:300000}")
+    private long capacityTimeoutMs;
+
     @Bean
-    public Web3j web3j() {
+    public Web3j web3j(RpcClientFactory rpcClientFactory) {
         log.info("Connecting to Ethereum client: {}", clientAddress);
-        return Web3j.build(new HttpService(clientAddress));
+        return rpcClientFactory.create("primary", clientAddress);
     }
 
     @Bean
@@ -39,6 +62,17 @@ public class Web3jConfig {
         return Credentials.create(privateKey);
     }
 
+    @Bean
+    public NonceTrackingTransactionManager transactionManager(Web3j web3j, Credentials credentials,
+                                                              ChainHeadTracker headTracker) {
+        if (bumpPercent < 10) {
+            throw new IllegalStateException("web3j.tx.bump-percent must be at least 10 for nodes to accept replacements");
+        }
+        return new NonceTrackingTransactionManager(web3j, credentials, headTracker,
+                new NonceTrackingTransactionManager.Settings(maxPending, stuckBlocks, bumpPercent, maxBumps,
+                        new BigInteger(maxGasPrice), receiptPollMs, receiptAttempts, capacityTimeoutMs));
+    }
+
     @Bean
     public ContractGasProvider contractGasProvider() {
         return new StaticGasProvider(
@@ -0,0 +1,85 @@
+package com.wetech.demo.web3j.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.wetech.demo.web3j.diagnostics.ChainCallEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    private final Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    /**
+     * Replaces Boot's JSON converter with one that times every response body it writes
+     */
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+                    throws IOException {
+                timeWrite(object, "json", () -> super.writeInternal(object, type, outputMessage));
+            }
+        };
+    }
+
+    /**
+     * Let machine clients negotiate CBOR with {@code Accept: application/cbor}. Spring MVC
+     * registers a CBOR converter when jackson-dataformat-cbor is present; it is swapped in place
+     * for one built from Boot's Jackson settings that also times its writes.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        MappingJackson2CborHttpMessageConverter cbor = new MappingJackson2CborHttpMessageConverter(
+                objectMapperBuilder.factory(new CBORFactory()).build()) {
+            @Override
+            protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+                    throws IOException {
+                timeWrite(object, "cbor", () -> super.writeInternal(object, type, outputMessage));
+            }
+        };
+        int existing = -1;
+        for (int i = 0; i < converters.size() && existing < 0; i++) {
+            if (converters.get(i) instanceof MappingJackson2CborHttpMessageConverter) {
+                existing = i;
+            }
+        }
+        if (existing >= 0) {
+            converters.set(existing, cbor);
+        } else {
+            converters.add(cbor);
+        }
+    }
+
+    private static void timeWrite(Object object, String format, BodyWrite write) throws IOException {
+        ChainCallEvent event = ChainCallEvent.begin(ChainCallEvent.Phase.SERIALIZATION)
+                .operation(object.getClass().getSimpleName())
+                .detail(format);
+        boolean written = false;
+        try {
+            write.run();
+            written = true;
+        } finally {
+            event.finish(written);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyWrite {
+        void run() throws IOException;
+    }
+}
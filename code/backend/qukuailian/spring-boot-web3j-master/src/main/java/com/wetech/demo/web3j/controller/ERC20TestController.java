@@ -1,15 +1,28 @@
 package com.wetech.demo.web3j.controller;
 
+import com.wetech.demo.web3j.dto.AllowanceResponse;
+import com.wetech.demo.web3j.dto.BalanceResponse;
+import com.wetech.demo.web3j.dto.ContractResponse;
+import com.wetech.demo.web3j.dto.DeploymentStatusRecord;
+import com.wetech.demo.web3j.dto.HolderBalanceRecord;
+import com.wetech.demo.web3j.dto.IndexedBalanceResponse;
+import com.wetech.demo.web3j.dto.SettlementResponse;
+import com.wetech.demo.web3j.dto.TransactionResponse;
+import com.wetech.demo.web3j.dto.TransferEventRecord;
 import com.wetech.demo.web3j.service.ERC20TestService;
+import com.wetech.demo.web3j.service.Erc20BalanceIndexService;
+import com.wetech.demo.web3j.service.TransferSettlementService;
+import io.reactivex.Flowable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 
 import java.math.BigInteger;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -19,38 +32,56 @@ import java.util.concurrent.CompletableFuture;
 public class ERC20TestController {
 
     private final ERC20TestService erc20Service;
+    private final TransferSettlementService settlementService;
+    private final ResponseStreamer responseStreamer;
 
     /**
      * 部署ERC20合约
      */
     @PostMapping("/deploy")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> deployContract() {
+    public CompletableFuture<ResponseEntity<ContractResponse>> deployContract() {
         return erc20Service.deployContract()
-                .thenApply(address -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("contractAddress", address);
-                    response.put("message", "ERC20 contract deployed successfully");
-                    return ResponseEntity.ok(response);
-                });
+                .thenApply(address -> ResponseEntity.ok(
+                        new ContractResponse("ERC20 contract deployed successfully", address)));
+    }
+
+    /**
+     * 批量部署ERC20合约，先流式返回所有预先计算的合约地址，再返回每个地址的广播结果
+     */
+    @PostMapping("/deploy/bulk")
+    public ResponseEntity<StreamingResponseBody> deployContracts(
+            @RequestParam int count,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responseStreamer.stream(erc20Service.deployContracts(count)
+                .map(deployment -> new DeploymentStatusRecord(deployment.nonce(), deployment.contractAddress(),
+                        deployment.status().name(), deployment.transactionHash(), deployment.error())),
+                DeploymentStatusRecord.class, accept);
+    }
+
+    /**
+     * 查询批量部署中已确认的合约地址
+     */
+    @GetMapping("/instances")
+    public ResponseEntity<StreamingResponseBody> getDeployedInstances(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responseStreamer.stream(Flowable.fromIterable(erc20Service.getDeployedInstances())
+                .map(address -> new ContractResponse(null, address)), ContractResponse.class, accept);
     }
 
     /**
      * 加载已部署的合约
      */
     @PostMapping("/load")
-    public ResponseEntity<Map<String, String>> loadContract(@RequestParam String address) {
+    public ResponseEntity<ContractResponse> loadContract(@RequestParam String address) {
         erc20Service.loadContract(address);
-        Map<String, String> response = new HashMap<>();
-        response.put("message", "ERC20 contract loaded successfully");
-        response.put("contractAddress", address);
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(new ContractResponse("ERC20 contract loaded successfully", address));
     }
 
     /**
      * 铸造代币
      */
     @PostMapping("/mint")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> mint(
+    public CompletableFuture<ResponseEntity<TransactionResponse>> mint(
             @RequestParam String to,
             @RequestParam String amount) {
         BigInteger value = new BigInteger(amount);
@@ -62,7 +93,7 @@ public class ERC20TestController {
      * 转账代币
      */
     @PostMapping("/transfer")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> transfer(
+    public CompletableFuture<ResponseEntity<TransactionResponse>> transfer(
             @RequestParam String to,
             @RequestParam String amount) {
         BigInteger value = new BigInteger(amount);
@@ -74,22 +105,27 @@ public class ERC20TestController {
      * 查询余额
      */
     @GetMapping("/balance")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> balanceOf(@RequestParam String account) {
+    public CompletableFuture<ResponseEntity<BalanceResponse>> balanceOf(@RequestParam String account) {
         return erc20Service.balanceOf(account)
-                .thenApply(balance -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("account", account);
-                    response.put("balance", balance.toString());
-                    response.put("contractAddress", erc20Service.getContractAddress());
-                    return ResponseEntity.ok(response);
-                });
+                .thenApply(balance -> ResponseEntity.ok(
+                        new BalanceResponse(account, balance, erc20Service.getContractAddress())));
+    }
+
+    /**
+     * 从本地Transfer事件索引查询余额，不访问节点
+     */
+    @GetMapping("/balance/indexed")
+    public ResponseEntity<IndexedBalanceResponse> indexedBalanceOf(@RequestParam String account) {
+        Erc20BalanceIndexService.IndexedBalance balance = erc20Service.indexedBalanceOf(account);
+        return ResponseEntity.ok(new IndexedBalanceResponse(account, balance.balance(),
+                erc20Service.getContractAddress(), balance.blockNumber(), balance.synced(), balance.holders()));
     }
 
     /**
      * 授权额度
      */
     @PostMapping("/approve")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> approve(
+    public CompletableFuture<ResponseEntity<TransactionResponse>> approve(
             @RequestParam String spender,
             @RequestParam String amount) {
         BigInteger value = new BigInteger(amount);
@@ -101,7 +137,7 @@ public class ERC20TestController {
      * 授权转账
      */
     @PostMapping("/transferFrom")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> transferFrom(
+    public CompletableFuture<ResponseEntity<TransactionResponse>> transferFrom(
             @RequestParam String from,
             @RequestParam String to,
             @RequestParam String amount) {
@@ -110,48 +146,97 @@ public class ERC20TestController {
                 .thenApply(receipt -> createTransactionResponse(receipt, "TransferFrom successful"));
     }
 
+    /**
+     * 轧差结算授权转账：窗口内同一对地址的转账合并为一笔净额交易
+     */
+    @PostMapping("/settle")
+    public CompletableFuture<ResponseEntity<SettlementResponse>> settle(
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam String amount) {
+        BigInteger value = new BigInteger(amount);
+        return settlementService.submit(from, to, value)
+                .thenApply(result -> ResponseEntity.ok(createSettlementResponse(result)));
+    }
+
     /**
      * 获取当前加载的合约地址
      */
     @GetMapping("/address")
-    public ResponseEntity<Map<String, String>> getContractAddress() {
+    public ResponseEntity<ContractResponse> getContractAddress() {
         String address = erc20Service.getContractAddress();
-        Map<String, String> response = new HashMap<>();
         if (address != null) {
-            response.put("contractAddress", address);
+            return ResponseEntity.ok(new ContractResponse(null, address));
         } else {
-            response.put("message", "No ERC20 contract loaded");
+            return ResponseEntity.ok(new ContractResponse("No ERC20 contract loaded", null));
         }
-        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 按区块范围流式导出Transfer事件（默认NDJSON，Accept为application/cbor时输出CBOR序列）
+     */
+    @GetMapping("/transfers")
+    public ResponseEntity<StreamingResponseBody> getTransfers(
+            @RequestParam String fromBlock,
+            @RequestParam String toBlock,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responseStreamer.stream(
+                erc20Service.transferEventBackfill(new BigInteger(fromBlock), new BigInteger(toBlock))
+                        .map(TransferEventRecord::of),
+                TransferEventRecord.class, accept);
+    }
+
+    /**
+     * 下载指定区块的持有人余额快照（format=csv或ndjson，缺省时按Accept协商，其他取值返回400）
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<StreamingResponseBody> getHolderSnapshot(
+            @RequestParam String block,
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        String negotiated;
+        if (format == null) {
+            negotiated = accept;
+        } else if ("csv".equalsIgnoreCase(format)) {
+            negotiated = ResponseStreamer.TEXT_CSV.toString();
+        } else if ("ndjson".equalsIgnoreCase(format)) {
+            negotiated = MediaType.APPLICATION_NDJSON_VALUE;
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+        return responseStreamer.download(
+                erc20Service.holderSnapshot(new BigInteger(block)).map(holder -> new HolderBalanceRecord(holder.address(), holder.balance())),
+                HolderBalanceRecord.class, negotiated,
+                "holders-" + erc20Service.getContractAddress() + "-" + block);
+    }
+
+    /**
+     * 生成单笔结算请求的响应，完全轧平时没有交易字段
+     */
+    private SettlementResponse createSettlementResponse(TransferSettlementService.SettlementResult result) {
+        TransactionReceipt receipt = result.receipt();
+        return new SettlementResponse(result.from(), result.to(), result.amount(), result.settlement(),
+                result.netFrom(), result.netTo(), result.netAmount(),
+                receipt != null ? receipt.getTransactionHash() : null,
+                receipt != null ? receipt.getBlockNumber() : null,
+                receipt != null ? receipt.getStatus() : null,
+                erc20Service.getContractAddress());
     }
 
     /**
      * 生成统一的交易响应格式
      */
-    private ResponseEntity<Map<String, String>> createTransactionResponse(TransactionReceipt receipt, String message) {
-        Map<String, String> response = new HashMap<>();
-        response.put("message", message);
-        response.put("transactionHash", receipt.getTransactionHash());
-        response.put("blockNumber", receipt.getBlockNumber().toString());
-        response.put("gasUsed", receipt.getGasUsed().toString());
-        response.put("status", receipt.getStatus());
-        response.put("contractAddress", erc20Service.getContractAddress());
-        return ResponseEntity.ok(response);
+    private ResponseEntity<TransactionResponse> createTransactionResponse(TransactionReceipt receipt, String message) {
+        return ResponseEntity.ok(TransactionResponse.of(receipt, message, erc20Service.getContractAddress()));
     }
 
     // 查询授权额度
     @GetMapping("/allowance")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> getAllowance(
+    public CompletableFuture<ResponseEntity<AllowanceResponse>> getAllowance(
             @RequestParam String owner,  // from 地址
             @RequestParam String spender) {
         return erc20Service.allowance(owner, spender)
-                .thenApply(allowance -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("owner", owner);
-                    response.put("spender", spender);
-                    response.put("allowance", allowance.toString()); // 以 wei 为单位
-                    response.put("contractAddress", erc20Service.getContractAddress());
-                    return ResponseEntity.ok(response);
-                });
+                .thenApply(allowance -> ResponseEntity.ok(  // 以 wei 为单位
+                        new AllowanceResponse(owner, spender, allowance, erc20Service.getContractAddress())));
     }
 }
\ No newline at end of file
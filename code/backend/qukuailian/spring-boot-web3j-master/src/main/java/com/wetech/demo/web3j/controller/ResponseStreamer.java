@@ -0,0 +1,298 @@
+package com.wetech.demo.web3j.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.disposables.Disposable;
+import org.reactivestreams.Subscription;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams list results item by item instead of materializing them: NDJSON by default,
+ * a CBOR sequence (RFC 8742) when the client accepts CBOR, or CSV with a header row when
+ * it accepts {@code text/csv}. Writers are built once per record type and reused for every
+ * response. Output is flushed every {@link #FLUSH_EVERY} items, and whenever the next item is
+ * not ready yet, so slow sources such as bulk deployments still reach the client promptly.
+ */
+@Component
+public class ResponseStreamer {
+
+    public static final MediaType APPLICATION_CBOR_SEQ = MediaType.parseMediaType("application/cbor-seq");
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private static final int FLUSH_EVERY = 256;
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final Map<Class<?>, ObjectWriter> jsonWriters = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> cborWriters = new ConcurrentHashMap<>();
+    private final Map<Class<?>, RecordComponent[]> csvColumns = new ConcurrentHashMap<>();
+
+    public ResponseStreamer(ObjectMapper jsonMapper, Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        this.jsonMapper = jsonMapper;
+        this.cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+    }
+
+    /**
+     * Stream items in the format negotiated from the {@code Accept} header
+     * @param items the items to write, subscribed to when the response body is written
+     * @param type the item type
+     * @param accept the raw {@code Accept} header, may be null
+     * @return the streaming response
+     */
+    public <T> ResponseEntity<StreamingResponseBody> stream(Flowable<T> items, Class<T> type, String accept) {
+        if (accepts(accept, TEXT_CSV)) {
+            return ResponseEntity.ok()
+                    .contentType(TEXT_CSV)
+                    .body(csvBody(items, type));
+        }
+        boolean cbor = acceptsCbor(accept);
+        return ResponseEntity.ok()
+                .contentType(cbor ? APPLICATION_CBOR_SEQ : MediaType.APPLICATION_NDJSON)
+                .body(jacksonBody(items, type, cbor));
+    }
+
+    /**
+     * Like {@link #stream}, marked as a file download
+     * @param fileName the file name without extension, which follows the negotiated format
+     */
+    public <T> ResponseEntity<StreamingResponseBody> download(Flowable<T> items, Class<T> type, String accept,
+                                                              String fileName) {
+        ResponseEntity<StreamingResponseBody> response = stream(items, type, accept);
+        MediaType contentType = response.getHeaders().getContentType();
+        String extension = TEXT_CSV.equals(contentType) ? ".csv"
+                : APPLICATION_CBOR_SEQ.equals(contentType) ? ".cbor" : ".ndjson";
+        return ResponseEntity.ok()
+                .headers(response.getHeaders())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileName + extension).build().toString())
+                .body(response.getBody());
+    }
+
+    private <T> StreamingResponseBody jacksonBody(Flowable<T> items, Class<T> type, boolean cbor) {
+        ObjectWriter writer = cbor
+                ? cborWriters.computeIfAbsent(type, key -> itemWriter(cborMapper, key))
+                : jsonWriters.computeIfAbsent(type, key -> itemWriter(jsonMapper, key));
+        return out -> {
+            ItemSource<T> source = ItemSource.subscribe(items);
+            try (JsonGenerator generator = writer.getFactory().createGenerator(out)) {
+                if (!cbor) {
+                    generator.setRootValueSeparator(null);
+                }
+                int count = 0;
+                while (source.hasNext()) {
+                    writer.writeValue(generator, source.next());
+                    if (!cbor) {
+                        generator.writeRaw('\n');
+                    }
+                    if (++count % FLUSH_EVERY == 0 || !source.isReady()) {
+                        generator.flush();
+                    }
+                }
+            } finally {
+                source.dispose();
+            }
+        };
+    }
+
+    /**
+     * Writers flush after every value by default, which would turn each item into its own
+     * socket write; flushing is batched by {@link #FLUSH_EVERY} instead
+     */
+    private static ObjectWriter itemWriter(ObjectMapper mapper, Class<?> type) {
+        return mapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    private <T> StreamingResponseBody csvBody(Flowable<T> items, Class<T> type) {
+        if (!type.isRecord()) {
+            throw new IllegalArgumentException("CSV output needs a record type, got " + type.getName());
+        }
+        RecordComponent[] columns = csvColumns.computeIfAbsent(type, Class::getRecordComponents);
+        return out -> {
+            ItemSource<T> source = ItemSource.subscribe(items);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                for (int i = 0; i < columns.length; i++) {
+                    writer.write(i == 0 ? "" : ",");
+                    writeCsvField(writer, columns[i].getName());
+                }
+                writer.write('\n');
+                int count = 0;
+                while (source.hasNext()) {
+                    T item = source.next();
+                    for (int i = 0; i < columns.length; i++) {
+                        writer.write(i == 0 ? "" : ",");
+                        Object value = columns[i].getAccessor().invoke(item);
+                        if (value != null) {
+                            writeCsvField(writer, value.toString());
+                        }
+                    }
+                    writer.write('\n');
+                    if (++count % FLUSH_EVERY == 0 || !source.isReady()) {
+                        writer.flush();
+                    }
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot read CSV column of " + type.getName(), e);
+            } finally {
+                source.dispose();
+            }
+        };
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static boolean acceptsCbor(String accept) {
+        return accepts(accept, MediaType.APPLICATION_CBOR) || accepts(accept, APPLICATION_CBOR_SEQ);
+    }
+
+    private static boolean accepts(String accept, MediaType type) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        List<MediaType> mediaTypes = MediaType.parseMediaTypes(accept);
+        return mediaTypes.stream().anyMatch(mediaType -> !mediaType.isWildcardSubtype() && type.includes(mediaType));
+    }
+
+    /**
+     * Blocking iteration over a {@link Flowable} with a bounded prefetch, like
+     * {@code blockingIterable()}, that can also tell whether the next item has already arrived
+     */
+    private static final class ItemSource<T> implements FlowableSubscriber<T>, Iterator<T>, Disposable {
+
+        private static final Object COMPLETE = new Object();
+
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        private final AtomicReference<Subscription> upstream = new AtomicReference<>();
+        private volatile boolean disposed;
+        private Object next;
+        private int consumed;
+
+        static <T> ItemSource<T> subscribe(Flowable<T> items) {
+            ItemSource<T> source = new ItemSource<>();
+            items.subscribe(source);
+            return source;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (disposed || !upstream.compareAndSet(null, subscription)) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(FLUSH_EVERY);
+        }
+
+        @Override
+        public void onNext(T item) {
+            queue.add(item);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            queue.add(new Failure(error));
+        }
+
+        @Override
+        public void onComplete() {
+            queue.add(COMPLETE);
+        }
+
+        /**
+         * Whether {@link #hasNext()} can answer without waiting for the source
+         */
+        boolean isReady() {
+            return next != null || !queue.isEmpty();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    dispose();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while streaming", e);
+                }
+            }
+            if (next instanceof Failure failure) {
+                if (failure.error() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (failure.error() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(failure.error());
+            }
+            return next != COMPLETE;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T item = (T) next;
+            next = null;
+            // Top up the prefetch in halves, as blockingIterable does
+            if (++consumed == FLUSH_EVERY / 2) {
+                consumed = 0;
+                upstream.get().request(FLUSH_EVERY / 2);
+            }
+            return item;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+            Subscription subscription = upstream.get();
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+
+        private record Failure(Throwable error) {
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package com.wetech.demo.web3j.controller;
 
+import com.wetech.demo.web3j.dto.ContractResponse;
+import com.wetech.demo.web3j.dto.DeploymentStatusRecord;
+import com.wetech.demo.web3j.dto.StorageValueResponse;
+import com.wetech.demo.web3j.dto.TransactionResponse;
 import com.wetech.demo.web3j.service.SimpleStorageService;
+import io.reactivex.Flowable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigInteger;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -18,19 +25,42 @@ import java.util.concurrent.CompletableFuture;
 public class SimpleStorageController {
 
     private final SimpleStorageService storageService;
+    private final ResponseStreamer responseStreamer;
 
     /**
      * Deploy a new SimpleStorage contract
      * @return the address of the deployed contract
      */
     @PostMapping("/deploy")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> deployContract() {
+    public CompletableFuture<ResponseEntity<ContractResponse>> deployContract() {
         return storageService.deployContract()
-                .thenApply(address -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("contractAddress", address);
-                    return ResponseEntity.ok(response);
-                });
+                .thenApply(address -> ResponseEntity.ok(new ContractResponse(null, address)));
+    }
+
+    /**
+     * Deploy many SimpleStorage contracts at once
+     * @param count the number of contracts to deploy
+     * @return every precomputed address as planned, then its broadcast status, streamed before the deployments are mined
+     */
+    @PostMapping("/deploy/bulk")
+    public ResponseEntity<StreamingResponseBody> deployContracts(
+            @RequestParam int count,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responseStreamer.stream(storageService.deployContracts(count)
+                .map(deployment -> new DeploymentStatusRecord(deployment.nonce(), deployment.contractAddress(),
+                        deployment.status().name(), deployment.transactionHash(), deployment.error())),
+                DeploymentStatusRecord.class, accept);
+    }
+
+    /**
+     * List the bulk deployed contracts whose deployment is confirmed
+     * @return the contract addresses
+     */
+    @GetMapping("/instances")
+    public ResponseEntity<StreamingResponseBody> getDeployedInstances(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return responseStreamer.stream(Flowable.fromIterable(storageService.getDeployedInstances())
+                .map(address -> new ContractResponse(null, address)), ContractResponse.class, accept);
     }
 
     /**
@@ -39,12 +69,9 @@ public class SimpleStorageController {
      * @return a success message
      */
     @PostMapping("/load")
-    public ResponseEntity<Map<String, String>> loadContract(@RequestParam String address) {
+    public ResponseEntity<ContractResponse> loadContract(@RequestParam String address) {
         storageService.loadContract(address);
-        Map<String, String> response = new HashMap<>();
-        response.put("message", "Contract loaded successfully");
-        response.put("contractAddress", address);
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(new ContractResponse("Contract loaded successfully", address));
     }
 
     /**
@@ -52,13 +79,34 @@ public class SimpleStorageController {
      * @return the stored value
      */
     @GetMapping("/value/get")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> getValue() {
+    public CompletableFuture<ResponseEntity<StorageValueResponse>> getValue() {
         return storageService.getValue()
-                .thenApply(value -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("value", value.toString());
-                    response.put("contractAddress", storageService.getContractAddress());
-                    return ResponseEntity.ok(response);
+                .thenApply(value -> ResponseEntity.ok(
+                        new StorageValueResponse(value, storageService.getContractAddress())));
+    }
+
+    /**
+     * Get the current value from the contract's storage slot at the latest block.
+     * The ETag and Last-Modified headers follow the block the value last changed at,
+     * so pollers sending If-None-Match get 304 Not Modified until it changes.
+     * @return the stored value, no body once 304 has been sent, or 503 if the node has no
+     * latest block yet
+     */
+    @GetMapping("/value/slot")
+    public CompletableFuture<ResponseEntity<StorageValueResponse>> getValueFromSlot(WebRequest request) {
+        return storageService.getValueFromSlot()
+                .thenApply(found -> {
+                    if (found.isEmpty()) {
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+                    }
+                    SimpleStorageService.SlotValue slot = found.get();
+                    String eTag = "\"" + slot.contractAddress() + "-" + slot.changedAtBlock() + "\"";
+                    long lastModified = slot.changedAtTimestamp() * 1000;
+                    // Also sets the ETag and Last-Modified headers on the response
+                    if (request.checkNotModified(eTag, lastModified)) {
+                        return null;
+                    }
+                    return ResponseEntity.ok(new StorageValueResponse(slot.value(), slot.contractAddress()));
                 });
     }
 
@@ -68,18 +116,11 @@ public class SimpleStorageController {
      * @return the transaction receipt details
      */
     @PostMapping("/value/set")
-    public CompletableFuture<ResponseEntity<Map<String, String>>> setValue(@RequestParam String value) {
+    public CompletableFuture<ResponseEntity<TransactionResponse>> setValue(@RequestParam String value) {
         BigInteger intValue = new BigInteger(value);
         return storageService.setValue(intValue)
-                .thenApply(receipt -> {
-                    Map<String, String> response = new HashMap<>();
-                    response.put("transactionHash", receipt.getTransactionHash());
-                    response.put("blockNumber", receipt.getBlockNumber().toString());
-                    response.put("gasUsed", receipt.getGasUsed().toString());
-                    response.put("status", receipt.getStatus());
-                    response.put("contractAddress", storageService.getContractAddress());
-                    return ResponseEntity.ok(response);
-                });
+                .thenApply(receipt -> ResponseEntity.ok(
+                        TransactionResponse.of(receipt, null, storageService.getContractAddress())));
     }
 
     /**
@@ -87,15 +128,12 @@ public class SimpleStorageController {
      * @return the contract address
      */
     @GetMapping("/address")
-    public ResponseEntity<Map<String, String>> getContractAddress() {
+    public ResponseEntity<ContractResponse> getContractAddress() {
         String address = storageService.getContractAddress();
-        Map<String, String> response = new HashMap<>();
         if (address != null) {
-            response.put("contractAddress", address);
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(new ContractResponse(null, address));
         } else {
-            response.put("message", "No contract loaded");
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(new ContractResponse("No contract loaded", null));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.wetech.demo.web3j.controller;
+
+import com.wetech.demo.web3j.dto.ApprovalEventRecord;
+import com.wetech.demo.web3j.dto.TransactionLookupResponse;
+import com.wetech.demo.web3j.dto.TransferEventRecord;
+import com.wetech.demo.web3j.service.TransactionLookupService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/tx")
+@RequiredArgsConstructor
+public class TransactionController {
+
+    private final TransactionLookupService lookupService;
+
+    /**
+     * Look up a transaction and the ERC20 events it emitted
+     * @param hash the transaction hash
+     * @return the transaction, or 404 if the node does not know it; finalized results are
+     * marked immutable for HTTP caches
+     */
+    @GetMapping("/{hash}")
+    public CompletableFuture<ResponseEntity<TransactionLookupResponse>> getTransaction(@PathVariable String hash) {
+        return lookupService.lookup(hash)
+                .thenApply(lookup -> lookup
+                        .map(found -> ResponseEntity.ok()
+                                .cacheControl(found.finalized()
+                                        ? CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable()
+                                        : CacheControl.noCache())
+                                .body(createLookupResponse(found)))
+                        .orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    private static TransactionLookupResponse createLookupResponse(TransactionLookupService.TransactionLookup lookup) {
+        if (lookup.mined() == null) {
+            Transaction transaction = lookup.pending();
+            return new TransactionLookupResponse(transaction.getHash(), true, transaction.getFrom(),
+                    transaction.getTo(), null, null, null, null, null, null, false, null, null);
+        }
+        TransactionReceipt receipt = lookup.mined().receipt();
+        return new TransactionLookupResponse(receipt.getTransactionHash(), false, receipt.getFrom(), receipt.getTo(),
+                receipt.getBlockNumber(), receipt.getBlockHash(), receipt.getGasUsed(), receipt.getStatus(),
+                receipt.getContractAddress(), lookup.confirmations() >= 0 ? lookup.confirmations() : null,
+                lookup.finalized(),
+                lookup.mined().transfers().stream().map(TransferEventRecord::of).toList(),
+                lookup.mined().approvals().stream().map(ApprovalEventRecord::of).toList());
+    }
+}
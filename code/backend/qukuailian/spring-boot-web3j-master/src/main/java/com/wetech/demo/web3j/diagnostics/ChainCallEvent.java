@@ -0,0 +1,158 @@
+package com.wetech.demo.web3j.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * JFR event for one phase of a chain operation. Fields are only filled in by callers that
+ * know them; a phase that ends below the recording threshold is dropped by {@link #finish}
+ * without being written.
+ */
+@Name(ChainCallEvent.NAME)
+@Label("Chain Call Phase")
+@Category({"Web3j", "Chain Calls"})
+@Description("One phase of a transaction or service call against the chain")
+@StackTrace(false)
+public class ChainCallEvent extends Event {
+
+    public static final String NAME = "com.wetech.web3j.ChainCall";
+
+    public enum Phase {
+        /** Waiting in a transaction lane for the dispatcher */
+        QUEUE("queue"),
+        /** Reading or reserving the nonce */
+        NONCE("nonce"),
+        /** Signing the raw transaction locally */
+        SIGN("sign"),
+        /** The {@code eth_sendRawTransaction} round trip */
+        BROADCAST("broadcast"),
+        /** Polling until the receipt is available */
+        RECEIPT_WAIT("receipt-wait"),
+        /** Writing a response body */
+        SERIALIZATION("serialization"),
+        /** A whole service call, from submission to receipt */
+        CALL("call");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    @Label("Phase")
+    private String phase;
+
+    @Label("Operation")
+    private String operation;
+
+    @Label("Method")
+    @Description("Function selector of the transaction, or deploy")
+    private String method;
+
+    @Label("Contract")
+    private String contractAddress;
+
+    @Label("Transaction Hash")
+    private String transactionHash;
+
+    @Label("Detail")
+    private String detail;
+
+    @Label("Succeeded")
+    private boolean success;
+
+    /**
+     * Create an event and start its clock
+     */
+    public static ChainCallEvent begin(Phase phase) {
+        ChainCallEvent event = new ChainCallEvent();
+        event.phase = phase.label;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Time a service call that completes with a receipt
+     * @param operation the service operation, e.g. {@code erc20.transfer}
+     * @param contractAddress the contract called
+     * @param call starts the call
+     * @return the call's result
+     */
+    public static CompletableFuture<TransactionReceipt> timeCall(String operation, String contractAddress,
+                                                                 Supplier<CompletableFuture<TransactionReceipt>> call) {
+        ChainCallEvent event = begin(Phase.CALL).operation(operation).contract(contractAddress);
+        CompletableFuture<TransactionReceipt> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            event.finish(false);
+            throw e;
+        }
+        return result.whenComplete((receipt, error) -> {
+            if (receipt != null) {
+                event.transactionHash(receipt.getTransactionHash());
+            }
+            event.finish(error == null);
+        });
+    }
+
+    public ChainCallEvent operation(String operation) {
+        this.operation = operation;
+        return this;
+    }
+
+    public ChainCallEvent contract(String contractAddress) {
+        this.contractAddress = contractAddress;
+        return this;
+    }
+
+    public ChainCallEvent transactionHash(String transactionHash) {
+        this.transactionHash = transactionHash;
+        return this;
+    }
+
+    public ChainCallEvent detail(String detail) {
+        this.detail = detail;
+        return this;
+    }
+
+    /**
+     * Fill in the contract and function selector of a transaction
+     */
+    public ChainCallEvent transaction(RawTransaction transaction) {
+        String to = transaction.getTo();
+        boolean deploy = to == null || to.isEmpty();
+        this.contractAddress = deploy ? null : to;
+        this.method = deploy ? "deploy" : selectorOf(transaction.getData());
+        return this;
+    }
+
+    /**
+     * Stop the clock and record the event if it ran longer than the threshold
+     */
+    public void finish(boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.success = success;
+            commit();
+        }
+    }
+
+    private static String selectorOf(String data) {
+        if (data == null) {
+            return null;
+        }
+        int length = data.startsWith("0x") ? 10 : 8;
+        return data.length() >= length ? data.substring(0, length) : data;
+    }
+}
@@ -0,0 +1,195 @@
+package com.wetech.demo.web3j.diagnostics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.Timespan;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an always-on JFR recording of {@link ChainCallEvent}s and {@link JsonRpcEvent}s. Only
+ * these two event types are enabled, and only occurrences longer than {@code threshold-ms}
+ * are written, so fast calls cost little more than two clock reads. The recording lives in a
+ * bounded on-disk ring of {@code max-age-minutes} / {@code max-size-mb}. Reads are served from
+ * the newest {@code max-slow-calls} entries of a dump that is reused for {@code dump-cache-ms}, so
+ * polling the endpoint does not copy and parse the whole recording on every request.
+ */
+@Slf4j
+@Component
+public class FlightRecorderService {
+
+    private static final Set<String> EVENT_NAMES = Set.of(ChainCallEvent.NAME, JsonRpcEvent.NAME);
+
+    private static final Set<String> COMMON_FIELDS = Set.of("startTime", "duration", "eventThread", "stackTrace");
+
+    @Value("${web3j.jfr.enabled:true}")
+    private boolean enabled;
+
+    @Value("${web3j.jfr.threshold-ms:20}")
+    private long thresholdMs;
+
+    @Value("${web3j.jfr.max-age-minutes:60}")
+    private long maxAgeMinutes;
+
+    @Value("${web3j.jfr.max-size-mb:64}")
+    private long maxSizeMb;
+
+    @Value("${web3j.jfr.dump-cache-ms:5000}")
+    private long dumpCacheMs;
+
+    @Value("${web3j.jfr.max-slow-calls:10000}")
+    private int maxSlowCalls;
+
+    private volatile Recording recording;
+
+    /**
+     * The last dump, newest first, and when it was taken; guarded by {@code this}
+     */
+    private List<SlowCall> dumped;
+    private long dumpedAt;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!FlightRecorder.isAvailable()) {
+            log.warn("JDK Flight Recorder is not available, slow chain calls will not be recorded");
+            return;
+        }
+        Duration threshold = Duration.ofMillis(thresholdMs);
+        Recording started = new Recording();
+        started.setName("web3j-chain-calls");
+        started.enable(ChainCallEvent.class).withThreshold(threshold);
+        started.enable(JsonRpcEvent.class).withThreshold(threshold);
+        started.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+        started.setMaxSize(maxSizeMb * 1024 * 1024);
+        started.setToDisk(true);
+        started.start();
+        recording = started;
+        log.info("Recording chain calls slower than {} ms with JFR", thresholdMs);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Read the slowest recent calls back from the recording
+     * @param minimumMillis only calls and phases at least this long; values below
+     *                      {@code threshold-ms} have no effect since shorter ones are not recorded
+     * @param limit the maximum number of entries
+     * @return the most recent matching entries, newest first, as of a dump at most
+     *         {@code dump-cache-ms} old
+     */
+    public List<SlowCall> slowCalls(long minimumMillis, int limit) throws IOException {
+        Recording current = recording;
+        if (current == null) {
+            throw new IllegalStateException("The chain call recording is not running (web3j.jfr.enabled)");
+        }
+        double minimum = minimumMillis;
+        List<SlowCall> calls = new ArrayList<>();
+        for (SlowCall call : recentCalls(current)) {
+            if (call.durationMs() >= minimum) {
+                calls.add(call);
+                if (calls.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return calls;
+    }
+
+    private synchronized List<SlowCall> recentCalls(Recording current) throws IOException {
+        if (dumped == null || System.nanoTime() - dumpedAt > TimeUnit.MILLISECONDS.toNanos(dumpCacheMs)) {
+            dumped = dump(current);
+            dumpedAt = System.nanoTime();
+        }
+        return dumped;
+    }
+
+    private List<SlowCall> dump(Recording current) throws IOException {
+        PriorityQueue<RecordedEvent> newest = new PriorityQueue<>(
+                Comparator.comparing(RecordedEvent::getStartTime));
+        Path file = Files.createTempFile("web3j-chain-calls", ".jfr");
+        try {
+            current.dump(file);
+            try (RecordingFile events = new RecordingFile(file)) {
+                while (events.hasMoreEvents()) {
+                    RecordedEvent event = events.readEvent();
+                    if (!EVENT_NAMES.contains(event.getEventType().getName())) {
+                        continue;
+                    }
+                    newest.add(event);
+                    if (newest.size() > maxSlowCalls) {
+                        newest.poll();
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        List<SlowCall> calls = new ArrayList<>(newest.size());
+        while (!newest.isEmpty()) {
+            calls.add(SlowCall.of(newest.poll()));
+        }
+        return List.copyOf(calls.reversed());
+    }
+
+    /**
+     * A recorded call or phase
+     * @param event the JFR event name
+     * @param startTime when it started, ISO-8601
+     * @param durationMs how long it took
+     * @param thread the thread that finished it
+     * @param fields the event's fields that were set; timespans in milliseconds
+     */
+    public record SlowCall(String event, String startTime, double durationMs, String thread,
+                           Map<String, Object> fields) {
+
+        static SlowCall of(RecordedEvent event) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (ValueDescriptor field : event.getFields()) {
+                String name = field.getName();
+                if (COMMON_FIELDS.contains(name) || event.getValue(name) == null) {
+                    continue;
+                }
+                fields.put(name, field.getAnnotation(Timespan.class) != null
+                        ? toMillis(event.getDuration(name)) : event.getValue(name));
+            }
+            return new SlowCall(event.getEventType().getName(), event.getStartTime().toString(),
+                    toMillis(event.getDuration()),
+                    event.getThread() != null ? event.getThread().getJavaName() : null, fields);
+        }
+
+        private static double toMillis(Duration duration) {
+            return duration.toNanos() / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.wetech.demo.web3j.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * JFR event for one JSON-RPC call, from the moment it is handed to the concurrency limiter
+ * until the node's response is read. The queue time spent waiting for a permit is recorded
+ * separately so an overloaded limiter is distinguishable from a slow node.
+ */
+@Name(JsonRpcEvent.NAME)
+@Label("JSON-RPC Call")
+@Category({"Web3j", "JSON-RPC"})
+@Description("A JSON-RPC request to an Ethereum node")
+@StackTrace(false)
+public class JsonRpcEvent extends Event {
+
+    public static final String NAME = "com.wetech.web3j.JsonRpc";
+
+    private static final Set<String> CONTRACT_METHODS = Set.of("eth_getCode", "eth_getStorageAt");
+
+    private static final Set<String> TRANSACTION_METHODS = Set.of(
+            "eth_getTransactionReceipt", "eth_getTransactionByHash");
+
+    @Label("Method")
+    private String method;
+
+    @Label("Client")
+    private String client;
+
+    @Label("Contract")
+    private String contractAddress;
+
+    @Label("Transaction Hash")
+    private String transactionHash;
+
+    @Label("Queue Time")
+    @Timespan(Timespan.NANOSECONDS)
+    private long queueTime;
+
+    @Label("Succeeded")
+    private boolean success;
+
+    @Label("Error")
+    private String error;
+
+    private transient long createdAt;
+
+    /**
+     * Create an event and start its clock
+     */
+    public static JsonRpcEvent begin(String client, String method) {
+        JsonRpcEvent event = new JsonRpcEvent();
+        event.client = client;
+        event.method = method;
+        event.createdAt = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Mark the moment the call got a permit and went out to the node
+     */
+    public void sent() {
+        queueTime = System.nanoTime() - createdAt;
+    }
+
+    /**
+     * Stop the clock and record the event if it ran longer than the threshold
+     * @param request the request, read for the contract and transaction hash only when recorded
+     * @param response the response, null for batches and failed calls
+     * @param failure the exception the call failed with, null on success
+     */
+    public void finish(Request<?, ?> request, Response<?> response, Throwable failure) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        if (request != null) {
+            describe(request, response);
+        }
+        if (failure != null) {
+            error = String.valueOf(failure.getMessage());
+        } else if (response != null && response.hasError()) {
+            error = response.getError().getMessage();
+        }
+        success = error == null;
+        commit();
+    }
+
+    private void describe(Request<?, ?> request, Response<?> response) {
+        List<?> params = request.getParams();
+        Object first = params == null || params.isEmpty() ? null : params.get(0);
+        if (first instanceof org.web3j.protocol.core.methods.request.Transaction transaction) {
+            contractAddress = transaction.getTo();
+        } else if (first instanceof String value && CONTRACT_METHODS.contains(method)) {
+            contractAddress = value;
+        } else if (first instanceof String value && TRANSACTION_METHODS.contains(method)) {
+            transactionHash = value;
+        }
+        if (response instanceof EthSendTransaction sent && !sent.hasError()) {
+            transactionHash = sent.getTransactionHash();
+        }
+    }
+}
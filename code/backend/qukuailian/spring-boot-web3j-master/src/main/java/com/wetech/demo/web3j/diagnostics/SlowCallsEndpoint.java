@@ -0,0 +1,36 @@
+package com.wetech.demo.web3j.diagnostics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * {@code GET /actuator/slowcalls?thresholdMs=&limit=}: dumps the recent chain call recording,
+ * filtered to calls and phases slower than the threshold
+ */
+@Component
+@Endpoint(id = "slowcalls")
+@RequiredArgsConstructor
+public class SlowCallsEndpoint {
+
+    private final FlightRecorderService flightRecorder;
+
+    @Value("${web3j.jfr.slow-call-ms:500}")
+    private long defaultThresholdMs;
+
+    @ReadOperation
+    public List<FlightRecorderService.SlowCall> slowCalls(@Nullable Long thresholdMs, @Nullable Integer limit)
+            throws IOException {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return flightRecorder.slowCalls(thresholdMs != null ? thresholdMs : defaultThresholdMs,
+                limit != null ? limit : 100);
+    }
+}
@@ -0,0 +1,14 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.math.BigInteger;
+
+/**
+ * Response for an ERC20 allowance query, the allowance is in wei
+ */
+public record AllowanceResponse(String owner,
+                                String spender,
+                                @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger allowance,
+                                String contractAddress) {
+}
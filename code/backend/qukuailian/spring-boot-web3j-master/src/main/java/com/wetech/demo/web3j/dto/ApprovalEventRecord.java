@@ -0,0 +1,22 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+
+import java.math.BigInteger;
+
+/**
+ * One ERC20 Approval event
+ */
+public record ApprovalEventRecord(long blockNumber,
+                                  long logIndex,
+                                  String transactionHash,
+                                  String owner,
+                                  String spender,
+                                  @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger value) {
+
+    public static ApprovalEventRecord of(ERC20Test.ApprovalEventResponse event) {
+        return new ApprovalEventRecord(event.log.getBlockNumber().longValue(), event.log.getLogIndex().longValue(),
+                event.log.getTransactionHash(), event.owner, event.spender, event.value);
+    }
+}
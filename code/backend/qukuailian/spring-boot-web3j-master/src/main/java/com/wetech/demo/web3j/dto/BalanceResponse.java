@@ -0,0 +1,13 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.math.BigInteger;
+
+/**
+ * Response for an ERC20 balance query
+ */
+public record BalanceResponse(String account,
+                              @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger balance,
+                              String contractAddress) {
+}
@@ -0,0 +1,10 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response for contract deployment, loading and address lookups
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ContractResponse(String message, String contractAddress) {
+}
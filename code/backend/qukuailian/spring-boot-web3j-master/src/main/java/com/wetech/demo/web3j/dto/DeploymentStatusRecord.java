@@ -0,0 +1,14 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One status line of a bulk deployment: {@code PLANNED}, then {@code BROADCAST} or {@code FAILED}
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record DeploymentStatusRecord(long nonce,
+                                     String contractAddress,
+                                     String status,
+                                     String transactionHash,
+                                     String error) {
+}
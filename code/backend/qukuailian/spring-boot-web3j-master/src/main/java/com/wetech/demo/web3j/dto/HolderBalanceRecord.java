@@ -0,0 +1,12 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.math.BigInteger;
+
+/**
+ * One row of a holder snapshot export
+ */
+public record HolderBalanceRecord(String address,
+                                  @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger balance) {
+}
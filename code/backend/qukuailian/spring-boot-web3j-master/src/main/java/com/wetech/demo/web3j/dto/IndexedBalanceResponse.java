@@ -0,0 +1,16 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.math.BigInteger;
+
+/**
+ * Response for a balance read from the local transfer index
+ */
+public record IndexedBalanceResponse(String account,
+                                     @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger balance,
+                                     String contractAddress,
+                                     long blockNumber,
+                                     boolean synced,
+                                     int holders) {
+}
@@ -0,0 +1,25 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigInteger;
+
+/**
+ * Response for a netted transferFrom settlement. {@code settlement} is "settled" when the request
+ * was covered by the single net transfer sent for the pair, described by the net fields, and
+ * "netted" when the pair's flows cancelled out and nothing was sent on chain
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SettlementResponse(String from,
+                                 String to,
+                                 @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger amount,
+                                 String settlement,
+                                 String netFrom,
+                                 String netTo,
+                                 @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger netAmount,
+                                 String transactionHash,
+                                 @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger blockNumber,
+                                 String status,
+                                 String contractAddress) {
+}
@@ -0,0 +1,12 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.math.BigInteger;
+
+/**
+ * Response for a SimpleStorage value query
+ */
+public record StorageValueResponse(@JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger value,
+                                   String contractAddress) {
+}
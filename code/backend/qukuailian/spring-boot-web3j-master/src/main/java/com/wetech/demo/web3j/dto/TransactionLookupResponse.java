@@ -0,0 +1,26 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Response for a transaction lookup; receipt fields and events are absent while pending
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TransactionLookupResponse(String transactionHash,
+                                        boolean pending,
+                                        String from,
+                                        String to,
+                                        @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger blockNumber,
+                                        String blockHash,
+                                        @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger gasUsed,
+                                        String status,
+                                        String contractAddress,
+                                        Long confirmations,
+                                        boolean finalized,
+                                        List<TransferEventRecord> transfers,
+                                        List<ApprovalEventRecord> approvals) {
+}
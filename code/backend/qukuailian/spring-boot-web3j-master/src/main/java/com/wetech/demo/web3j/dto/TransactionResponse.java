@@ -0,0 +1,24 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+
+/**
+ * Response for a mined transaction
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TransactionResponse(String message,
+                                  String transactionHash,
+                                  @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger blockNumber,
+                                  @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger gasUsed,
+                                  String status,
+                                  String contractAddress) {
+
+    public static TransactionResponse of(TransactionReceipt receipt, String message, String contractAddress) {
+        return new TransactionResponse(message, receipt.getTransactionHash(), receipt.getBlockNumber(),
+                receipt.getGasUsed(), receipt.getStatus(), contractAddress);
+    }
+}
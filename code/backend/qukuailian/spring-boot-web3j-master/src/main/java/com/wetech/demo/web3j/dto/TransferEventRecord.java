@@ -0,0 +1,22 @@
+package com.wetech.demo.web3j.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+
+import java.math.BigInteger;
+
+/**
+ * One ERC20 Transfer event, as streamed by the list endpoints
+ */
+public record TransferEventRecord(long blockNumber,
+                                  long logIndex,
+                                  String transactionHash,
+                                  String from,
+                                  String to,
+                                  @JsonFormat(shape = JsonFormat.Shape.STRING) BigInteger value) {
+
+    public static TransferEventRecord of(ERC20Test.TransferEventResponse event) {
+        return new TransferEventRecord(event.log.getBlockNumber().longValue(), event.log.getLogIndex().longValue(),
+                event.log.getTransactionHash(), event.from, event.to, event.value);
+    }
+}
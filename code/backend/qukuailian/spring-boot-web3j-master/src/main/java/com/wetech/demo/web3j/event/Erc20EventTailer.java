@@ -0,0 +1,194 @@
+package com.wetech.demo.web3j.event;
+
+import com.wetech.demo.web3j.config.BlockHeader;
+import com.wetech.demo.web3j.config.NewHeadEvent;
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import io.reactivex.Flowable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tails ERC20 {@code Transfer}/{@code Approval} logs of the watched contracts block by block.
+ * Each new header's {@code logsBloom} is tested against the contract addresses and the two event
+ * topics first, and {@code eth_getLogs} is only sent for blocks that might contain a match.
+ * Blocks are fetched one at a time in block order; a failed fetch is retried with backoff and
+ * later blocks wait behind it, so a transient RPC error never drops events.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class Erc20EventTailer {
+
+    private static final int[] TRANSFER_BITS = LogsBloom.positions(Erc20LogDecoder.TRANSFER_TOPIC);
+    private static final int[] APPROVAL_BITS = LogsBloom.positions(Erc20LogDecoder.APPROVAL_TOPIC);
+
+    private static final long INITIAL_RETRY_MS = 500;
+    private static final long MAX_RETRY_MS = 30_000;
+
+    private final Web3j web3j;
+
+    private final Map<String, int[]> watched = new ConcurrentHashMap<>();
+    private final FlowableProcessor<ERC20Test.TransferEventResponse> transfers = PublishProcessor.<ERC20Test.TransferEventResponse>create().toSerialized();
+    private final FlowableProcessor<ERC20Test.ApprovalEventResponse> approvals = PublishProcessor.<ERC20Test.ApprovalEventResponse>create().toSerialized();
+    private final ExecutorService fetcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "erc20-event-tailer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong blocksSkipped = new AtomicLong();
+    private final AtomicLong blocksFetched = new AtomicLong();
+
+    @PreDestroy
+    void shutdown() {
+        fetcher.shutdownNow();
+    }
+
+    /**
+     * Start tailing the events of a contract
+     * @param contractAddress the ERC20 contract address
+     */
+    public void watch(String contractAddress) {
+        String address = contractAddress.toLowerCase(Locale.ROOT);
+        watched.computeIfAbsent(address, LogsBloom::positions);
+        log.info("Tailing ERC20 events of {}", address);
+    }
+
+    /**
+     * Stop tailing the events of a contract
+     * @param contractAddress the ERC20 contract address
+     */
+    public void unwatch(String contractAddress) {
+        watched.remove(contractAddress.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Live Transfer events of all watched contracts, in block order
+     */
+    public Flowable<ERC20Test.TransferEventResponse> transferEvents() {
+        return transfers;
+    }
+
+    /**
+     * Live Approval events of all watched contracts, in block order
+     */
+    public Flowable<ERC20Test.ApprovalEventResponse> approvalEvents() {
+        return approvals;
+    }
+
+    public long getBlocksSkipped() {
+        return blocksSkipped.get();
+    }
+
+    public long getBlocksFetched() {
+        return blocksFetched.get();
+    }
+
+    @EventListener
+    public void onNewHead(NewHeadEvent event) {
+        if (watched.isEmpty()) {
+            return;
+        }
+        BlockHeader header = event.header();
+        List<String> candidates = candidates(header);
+        if (candidates.isEmpty()) {
+            blocksSkipped.incrementAndGet();
+            return;
+        }
+        blocksFetched.incrementAndGet();
+        fetcher.execute(() -> fetch(header, candidates));
+    }
+
+    private List<String> candidates(BlockHeader header) {
+        if (header.logsBloom() == null) {
+            return new ArrayList<>(watched.keySet());
+        }
+        LogsBloom bloom = LogsBloom.fromHex(header.logsBloom());
+        if (!bloom.mightContain(TRANSFER_BITS) && !bloom.mightContain(APPROVAL_BITS)) {
+            return List.of();
+        }
+        List<String> candidates = new ArrayList<>();
+        watched.forEach((address, bits) -> {
+            if (bloom.mightContain(bits)) {
+                candidates.add(address);
+            }
+        });
+        return candidates;
+    }
+
+    private void fetch(BlockHeader header, List<String> addresses) {
+        DefaultBlockParameter block = DefaultBlockParameter.valueOf(BigInteger.valueOf(header.number()));
+        EthFilter filter = new EthFilter(block, block, addresses);
+        filter.addOptionalTopics(Erc20LogDecoder.TRANSFER_TOPIC, Erc20LogDecoder.APPROVAL_TOPIC);
+        List<Log> logs;
+        try {
+            logs = fetchWithRetry(header, filter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Log eventLog : logs) {
+            if (!header.hash().equalsIgnoreCase(eventLog.getBlockHash())) {
+                continue;
+            }
+            Erc20LogRecord.Type type = Erc20LogDecoder.typeOf(eventLog);
+            if (type == Erc20LogRecord.Type.TRANSFER) {
+                transfers.onNext(Erc20LogDecoder.toTransferEvent(eventLog));
+            } else if (type == Erc20LogRecord.Type.APPROVAL) {
+                approvals.onNext(Erc20LogDecoder.toApprovalEvent(eventLog));
+            }
+        }
+    }
+
+    /**
+     * Fetch the logs of a block, retrying until the node answers. Blocking here holds back the
+     * following blocks, which keeps the event stream complete and in order.
+     */
+    private List<Log> fetchWithRetry(BlockHeader header, EthFilter filter) throws InterruptedException {
+        long backoffMs = INITIAL_RETRY_MS;
+        for (int attempt = 1; ; attempt++) {
+            String error;
+            try {
+                EthLog response = web3j.ethGetLogs(filter).send();
+                if (!response.hasError()) {
+                    if (attempt > 1) {
+                        log.info("Fetched ERC20 logs for block {} after {} attempts", header.number(), attempt);
+                    }
+                    List<Log> logs = new ArrayList<>(response.getLogs().size());
+                    for (EthLog.LogResult<?> result : response.getLogs()) {
+                        logs.add((Log) result.get());
+                    }
+                    return logs;
+                }
+                error = response.getError().getMessage();
+            } catch (IOException | RuntimeException e) {
+                error = e.getMessage();
+            }
+            log.warn("Failed to fetch ERC20 logs for block {} (attempt {}), retrying in {} ms: {}",
+                    header.number(), attempt, backoffMs, error);
+            TimeUnit.MILLISECONDS.sleep(backoffMs);
+            backoffMs = Math.min(MAX_RETRY_MS, backoffMs * 2);
+        }
+    }
+}
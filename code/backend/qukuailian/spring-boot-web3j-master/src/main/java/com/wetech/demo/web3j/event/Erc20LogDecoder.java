@@ -0,0 +1,171 @@
+package com.wetech.demo.web3j.event;
+
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import org.web3j.abi.EventEncoder;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes ERC20 {@code Transfer}/{@code Approval} logs by dispatching on the precomputed
+ * topic0 hash and parsing the indexed addresses and the {@code uint256} value straight from
+ * the hex, instead of going through {@code Contract.staticExtractEventParametersWithLog}.
+ */
+public final class Erc20LogDecoder {
+
+    public static final String TRANSFER_TOPIC = EventEncoder.encode(ERC20Test.TRANSFER_EVENT);
+
+    public static final String APPROVAL_TOPIC = EventEncoder.encode(ERC20Test.APPROVAL_EVENT);
+
+    /**
+     * "0x" followed by one 32-byte word
+     */
+    private static final int WORD_HEX_LENGTH = 66;
+
+    private Erc20LogDecoder() {
+    }
+
+    /**
+     * Decode a log into a reusable record
+     * @param log the log to decode
+     * @param record the record to overwrite
+     * @return false if the log is not an ERC20 Transfer or Approval
+     */
+    public static boolean decode(Log log, Erc20LogRecord record) {
+        Erc20LogRecord.Type type = typeOf(log);
+        if (type == null) {
+            return false;
+        }
+        List<String> topics = log.getTopics();
+        parseAddress(topics.get(1), record.getSourceBytes());
+        parseAddress(topics.get(2), record.getTargetBytes());
+        parseWord(log.getData(), record.valueWords());
+        record.set(type,
+                log.getBlockNumberRaw() != null ? log.getBlockNumber().longValue() : -1,
+                log.getLogIndexRaw() != null ? log.getLogIndex().longValue() : -1);
+        return true;
+    }
+
+    /**
+     * Drop-in replacement for {@link ERC20Test#getTransferEventFromLog(Log)}
+     */
+    public static ERC20Test.TransferEventResponse toTransferEvent(Log log) {
+        if (typeOf(log) != Erc20LogRecord.Type.TRANSFER) {
+            throw new IllegalArgumentException("Not an ERC20 Transfer log: " + log.getTopics());
+        }
+        ERC20Test.TransferEventResponse response = new ERC20Test.TransferEventResponse();
+        response.log = log;
+        response.from = addressOf(log.getTopics().get(1));
+        response.to = addressOf(log.getTopics().get(2));
+        response.value = valueOf(log.getData());
+        return response;
+    }
+
+    /**
+     * Drop-in replacement for {@link ERC20Test#getApprovalEventFromLog(Log)}
+     */
+    public static ERC20Test.ApprovalEventResponse toApprovalEvent(Log log) {
+        if (typeOf(log) != Erc20LogRecord.Type.APPROVAL) {
+            throw new IllegalArgumentException("Not an ERC20 Approval log: " + log.getTopics());
+        }
+        ERC20Test.ApprovalEventResponse response = new ERC20Test.ApprovalEventResponse();
+        response.log = log;
+        response.owner = addressOf(log.getTopics().get(1));
+        response.spender = addressOf(log.getTopics().get(2));
+        response.value = valueOf(log.getData());
+        return response;
+    }
+
+    /**
+     * Drop-in replacement for {@link ERC20Test#getTransferEvents(TransactionReceipt)}
+     */
+    public static List<ERC20Test.TransferEventResponse> getTransferEvents(TransactionReceipt receipt) {
+        List<ERC20Test.TransferEventResponse> responses = new ArrayList<>();
+        for (Log log : receipt.getLogs()) {
+            if (typeOf(log) == Erc20LogRecord.Type.TRANSFER) {
+                responses.add(toTransferEvent(log));
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Drop-in replacement for {@link ERC20Test#getApprovalEvents(TransactionReceipt)}
+     */
+    public static List<ERC20Test.ApprovalEventResponse> getApprovalEvents(TransactionReceipt receipt) {
+        List<ERC20Test.ApprovalEventResponse> responses = new ArrayList<>();
+        for (Log log : receipt.getLogs()) {
+            if (typeOf(log) == Erc20LogRecord.Type.APPROVAL) {
+                responses.add(toApprovalEvent(log));
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Classify a log by its topic0; ERC721 Transfers share the hash but index the token id,
+     * so the topic count and data length are checked as well
+     */
+    public static Erc20LogRecord.Type typeOf(Log log) {
+        List<String> topics = log.getTopics();
+        if (topics == null || topics.size() != 3 || log.getData() == null
+                || log.getData().length() != WORD_HEX_LENGTH) {
+            return null;
+        }
+        String topic0 = topics.get(0);
+        if (TRANSFER_TOPIC.equalsIgnoreCase(topic0)) {
+            return Erc20LogRecord.Type.TRANSFER;
+        }
+        if (APPROVAL_TOPIC.equalsIgnoreCase(topic0)) {
+            return Erc20LogRecord.Type.APPROVAL;
+        }
+        return null;
+    }
+
+    private static String addressOf(String topic) {
+        return "0x" + topic.substring(WORD_HEX_LENGTH - 2 * Erc20LogRecord.ADDRESS_LENGTH).toLowerCase();
+    }
+
+    private static BigInteger valueOf(String data) {
+        long[] words = new long[4];
+        parseWord(data, words);
+        if (words[0] == 0 && words[1] == 0 && words[2] == 0 && words[3] >= 0) {
+            return BigInteger.valueOf(words[3]);
+        }
+        return new BigInteger(data.substring(2), 16);
+    }
+
+    private static void parseAddress(String topic, byte[] into) {
+        int offset = WORD_HEX_LENGTH - 2 * Erc20LogRecord.ADDRESS_LENGTH;
+        for (int i = 0; i < into.length; i++) {
+            into[i] = (byte) ((nibble(topic.charAt(offset + 2 * i)) << 4) | nibble(topic.charAt(offset + 2 * i + 1)));
+        }
+    }
+
+    private static void parseWord(String hex, long[] into) {
+        for (int word = 0; word < 4; word++) {
+            long value = 0;
+            int offset = 2 + word * 16;
+            for (int i = 0; i < 16; i++) {
+                value = (value << 4) | nibble(hex.charAt(offset + i));
+            }
+            into[word] = value;
+        }
+    }
+
+    private static int nibble(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        throw new IllegalArgumentException("Invalid hex character: " + c);
+    }
+}
@@ -0,0 +1,103 @@
+package com.wetech.demo.web3j.event;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+
+/**
+ * Reusable, mutable holder for a decoded ERC20 {@code Transfer} or {@code Approval} log.
+ * Addresses are kept as raw 20-byte arrays and the {@code uint256} value as four
+ * big-endian 64-bit words, so decoding into the same instance allocates nothing.
+ */
+public final class Erc20LogRecord {
+
+    public enum Type { TRANSFER, APPROVAL }
+
+    public static final int ADDRESS_LENGTH = 20;
+
+    @Getter
+    private Type type;
+
+    /**
+     * {@code from} of a Transfer, {@code owner} of an Approval
+     */
+    private final byte[] source = new byte[ADDRESS_LENGTH];
+
+    /**
+     * {@code to} of a Transfer, {@code spender} of an Approval
+     */
+    private final byte[] target = new byte[ADDRESS_LENGTH];
+
+    private final long[] value = new long[4];
+
+    @Getter
+    private long blockNumber;
+
+    @Getter
+    private long logIndex;
+
+    void set(Type type, long blockNumber, long logIndex) {
+        this.type = type;
+        this.blockNumber = blockNumber;
+        this.logIndex = logIndex;
+    }
+
+    long[] valueWords() {
+        return value;
+    }
+
+    /**
+     * The raw {@code from}/{@code owner} address bytes; the array is reused by the next decode
+     */
+    public byte[] getSourceBytes() {
+        return source;
+    }
+
+    /**
+     * The raw {@code to}/{@code spender} address bytes; the array is reused by the next decode
+     */
+    public byte[] getTargetBytes() {
+        return target;
+    }
+
+    public String getSourceAddress() {
+        return toAddress(source);
+    }
+
+    public String getTargetAddress() {
+        return toAddress(target);
+    }
+
+    /**
+     * One of the four big-endian 64-bit words of the value, word 3 being the least significant
+     */
+    public long getValueWord(int index) {
+        return value[index];
+    }
+
+    public boolean valueFitsInLong() {
+        return value[0] == 0 && value[1] == 0 && value[2] == 0 && value[3] >= 0;
+    }
+
+    public boolean valueFitsIn128Bits() {
+        return value[0] == 0 && value[1] == 0;
+    }
+
+    public BigInteger getValue() {
+        if (valueFitsInLong()) {
+            return BigInteger.valueOf(value[3]);
+        }
+        byte[] bytes = new byte[33];
+        for (int word = 0; word < 4; word++) {
+            for (int i = 0; i < 8; i++) {
+                bytes[1 + word * 8 + i] = (byte) (value[word] >>> (56 - 8 * i));
+            }
+        }
+        return new BigInteger(bytes);
+    }
+
+    private static String toAddress(byte[] address) {
+        return "0x" + HexFormat.of().formatHex(address);
+    }
+}
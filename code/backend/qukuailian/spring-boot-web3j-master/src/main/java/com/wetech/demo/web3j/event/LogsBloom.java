@@ -0,0 +1,55 @@
+package com.wetech.demo.web3j.event;
+
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+/**
+ * The 2048-bit bloom filter carried in block headers and receipts ({@code logsBloom}). Every
+ * log sets three bits derived from the keccak256 hash of its address and of each topic, so a
+ * block whose bloom lacks any of those bits cannot contain a matching log.
+ */
+public final class LogsBloom {
+
+    public static final int BYTE_LENGTH = 256;
+
+    private final byte[] bits;
+
+    private LogsBloom(byte[] bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Parse the hex {@code logsBloom} of a header or receipt
+     */
+    public static LogsBloom fromHex(String hex) {
+        byte[] bits = Numeric.hexStringToByteArray(hex);
+        if (bits.length != BYTE_LENGTH) {
+            throw new IllegalArgumentException("logsBloom must be " + BYTE_LENGTH + " bytes, got " + bits.length);
+        }
+        return new LogsBloom(bits);
+    }
+
+    /**
+     * Precompute the three bit positions of a value (an address or a topic, as hex)
+     */
+    public static int[] positions(String hexValue) {
+        byte[] hash = Hash.sha3(Numeric.hexStringToByteArray(hexValue));
+        int[] positions = new int[3];
+        for (int i = 0; i < 3; i++) {
+            positions[i] = (((hash[2 * i] & 0xff) << 8) | (hash[2 * i + 1] & 0xff)) & 2047;
+        }
+        return positions;
+    }
+
+    /**
+     * Test the precomputed positions of a value; false means the value is definitely absent
+     */
+    public boolean mightContain(int[] positions) {
+        for (int position : positions) {
+            if ((bits[BYTE_LENGTH - 1 - position / 8] & (1 << (position % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,236 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.config.NonceTrackingTransactionManager;
+import io.reactivex.Flowable;
+import io.reactivex.processors.ReplayProcessor;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.crypto.ContractUtils;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.tx.Contract;
+import org.web3j.tx.gas.ContractGasProvider;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Deploys many instances of a contract at once. A nonce range is reserved up front and every
+ * contract address is derived locally from (sender, nonce) and reported as planned before
+ * anything is sent; the deployments are then sent back to back without waiting for receipts.
+ * Each address is reported again once its transaction is accepted by the node, or as failed if
+ * its nonce could not be broadcast, in which case the address may later belong to another
+ * contract or to nothing.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkDeploymentService {
+
+    private final NonceTrackingTransactionManager transactionManager;
+    private final ContractGasProvider gasProvider;
+
+    @Value("${web3j.bulk-deploy.max-count:1000}")
+    private int maxCount;
+
+    @Value("${web3j.bulk-deploy.receipt-poll-ms:2000}")
+    private long receiptPollMs;
+
+    @Value("${web3j.bulk-deploy.receipt-attempts:300}")
+    private int receiptAttempts;
+
+    /**
+     * Broadcasts deployments one at a time, so concurrent bulk deployments do not interleave
+     */
+    private final ExecutorService broadcaster = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-deploy-broadcast");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Polls deployment receipts without tying up a thread per deployment
+     */
+    private final ScheduledExecutorService receiptPoller = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "bulk-deploy-receipts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    void shutdown() {
+        broadcaster.shutdownNow();
+        receiptPoller.shutdownNow();
+    }
+
+    /**
+     * Reserve nonces for {@code count} deployments and broadcast them in the background. The
+     * broadcast continues whether or not the result is consumed.
+     * @param binary the contract creation bytecode
+     * @param count the number of instances
+     * @param loader wraps a confirmed address into a contract instance
+     * @param onDeployed called with each instance once its deployment receipt confirms
+     * @return every planned address first, then each deployment once it is broadcast or has
+     * failed, both in nonce order
+     */
+    public <C extends Contract> Flowable<PlannedDeployment> deploy(String binary, int count,
+                                                                   Function<String, C> loader,
+                                                                   Consumer<C> onDeployed) {
+        if (count < 1 || count > maxCount) {
+            throw new IllegalArgumentException("count must be between 1 and " + maxCount);
+        }
+        BigInteger firstNonce;
+        try {
+            firstNonce = transactionManager.reserveNonces(count);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to reserve nonces: " + e.getMessage(), e);
+        }
+        log.info("Deploying {} contracts with nonces {} to {}", count, firstNonce, firstNonce.add(BigInteger.valueOf(count - 1)));
+        String sender = transactionManager.getFromAddress();
+        String[] addresses = new String[count];
+        ReplayProcessor<PlannedDeployment> results = ReplayProcessor.createWithSize(2 * count);
+        for (int i = 0; i < count; i++) {
+            BigInteger nonce = firstNonce.add(BigInteger.valueOf(i));
+            addresses[i] = ContractUtils.generateContractAddress(sender, nonce);
+            results.onNext(PlannedDeployment.planned(nonce, addresses[i]));
+        }
+        try {
+            broadcaster.execute(() -> broadcast(binary, firstNonce, addresses, results, loader, onDeployed));
+        } catch (RejectedExecutionException e) {
+            transactionManager.releaseNonces(firstNonce);
+            throw new IllegalStateException("Bulk deployment is shutting down", e);
+        }
+        return results;
+    }
+
+    private <C extends Contract> void broadcast(String binary, BigInteger firstNonce, String[] addresses,
+                                                ReplayProcessor<PlannedDeployment> results,
+                                                Function<String, C> loader, Consumer<C> onDeployed) {
+        int count = addresses.length;
+        String error = null;
+        try {
+            for (int i = 0; i < count; i++) {
+                BigInteger nonce = firstNonce.add(BigInteger.valueOf(i));
+                String address = addresses[i];
+                if (error != null) {
+                    results.onNext(PlannedDeployment.failed(nonce, address,
+                            "Not broadcast, an earlier nonce failed: " + error));
+                    continue;
+                }
+                RawTransaction transaction = RawTransaction.createContractTransaction(nonce,
+                        gasProvider.getGasPrice(), gasProvider.getGasLimit(), BigInteger.ZERO, binary);
+                try {
+                    EthSendTransaction response = transactionManager.sendReserved(transaction);
+                    error = response.hasError() ? response.getError().getMessage() : null;
+                    if (error == null) {
+                        PlannedDeployment deployment = PlannedDeployment.broadcast(nonce, address,
+                                response.getTransactionHash());
+                        results.onNext(deployment);
+                        awaitReceipt(response.getTransactionHash())
+                                .thenAccept(receipt -> confirm(deployment, receipt, loader, onDeployed))
+                                .exceptionally(failure -> {
+                                    log.error("Deployment {} failed: {}", address, failure.getMessage());
+                                    return null;
+                                });
+                        continue;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    error = String.valueOf(e.getMessage());
+                }
+                // Later nonces can never be mined past the gap, so stop and let the counter re-sync
+                log.error("Broadcasting deployment with nonce {} failed ({}), abandoning the remaining {}",
+                        nonce, error, count - i - 1);
+                results.onNext(PlannedDeployment.failed(nonce, address, error));
+            }
+        } finally {
+            transactionManager.releaseNonces(firstNonce);
+            if (error != null) {
+                transactionManager.resync();
+            }
+            results.onComplete();
+        }
+    }
+
+    private <C extends Contract> void confirm(PlannedDeployment deployment, TransactionReceipt receipt,
+                                              Function<String, C> loader, Consumer<C> onDeployed) {
+        if (!receipt.isStatusOK() || !deployment.contractAddress().equalsIgnoreCase(receipt.getContractAddress())) {
+            log.error("Deployment {} reverted or landed at {} (tx {})",
+                    deployment.contractAddress(), receipt.getContractAddress(), receipt.getTransactionHash());
+            return;
+        }
+        log.info("Contract deployed to: {} (nonce {})", deployment.contractAddress(), deployment.nonce());
+        onDeployed.accept(loader.apply(deployment.contractAddress()));
+    }
+
+    private CompletableFuture<TransactionReceipt> awaitReceipt(String transactionHash) {
+        CompletableFuture<TransactionReceipt> result = new CompletableFuture<>();
+        schedulePoll(transactionHash, 1, result);
+        return result;
+    }
+
+    private void schedulePoll(String transactionHash, int attempt, CompletableFuture<TransactionReceipt> result) {
+        try {
+            receiptPoller.schedule(() -> pollReceipt(transactionHash, attempt, result),
+                    receiptPollMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void pollReceipt(String transactionHash, int attempt, CompletableFuture<TransactionReceipt> result) {
+        try {
+            // Follows the deployment if it was re-sent with a bumped gas price
+            Optional<TransactionReceipt> receipt = transactionManager.findReceipt(transactionHash);
+            if (receipt.isPresent()) {
+                result.complete(receipt.get());
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Receipt lookup for {} failed (attempt {}): {}", transactionHash, attempt, e.getMessage());
+        }
+        if (attempt >= receiptAttempts) {
+            result.completeExceptionally(new IllegalStateException(
+                    "No receipt for " + transactionHash + " after " + attempt + " attempts"));
+            return;
+        }
+        schedulePoll(transactionHash, attempt + 1, result);
+    }
+
+    /**
+     * A deployment whose address was derived before it was broadcast
+     * @param status planned before sending, then whether the transaction was accepted by the node
+     * @param transactionHash the deployment transaction, null unless it was broadcast
+     * @param error why the broadcast failed, null if it was accepted
+     */
+    public record PlannedDeployment(long nonce, String contractAddress, Status status, String transactionHash,
+                                    String error) {
+
+        public enum Status { PLANNED, BROADCAST, FAILED }
+
+        static PlannedDeployment planned(BigInteger nonce, String contractAddress) {
+            return new PlannedDeployment(nonce.longValueExact(), contractAddress, Status.PLANNED, null, null);
+        }
+
+        static PlannedDeployment broadcast(BigInteger nonce, String contractAddress, String transactionHash) {
+            return new PlannedDeployment(nonce.longValueExact(), contractAddress, Status.BROADCAST,
+                    transactionHash, null);
+        }
+
+        static PlannedDeployment failed(BigInteger nonce, String contractAddress, String error) {
+            return new PlannedDeployment(nonce.longValueExact(), contractAddress, Status.FAILED, null, error);
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package com.wetech.demo.web3j.service;
 
+import com.wetech.demo.web3j.config.NonceTrackingTransactionManager;
 import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.diagnostics.ChainCallEvent;
+import com.wetech.demo.web3j.event.Erc20EventTailer;
+import com.wetech.demo.web3j.event.Erc20LogDecoder;
+import io.reactivex.Flowable;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.tx.gas.ContractGasProvider;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
@@ -19,10 +27,22 @@ import java.util.concurrent.CompletableFuture;
 public class ERC20TestService {
 
     private final Web3j web3j;
-    private final Credentials credentials;
+    private final NonceTrackingTransactionManager transactionManager;
     private final ContractGasProvider gasProvider;
+    private final BulkDeploymentService bulkDeploymentService;
+    private final LogBackfillService backfillService;
+    private final Erc20EventTailer eventTailer;
+    private final Erc20BalanceIndexService balanceIndex;
+    private final HolderSnapshotService snapshotService;
+    private final TransactionLookupService lookupService;
+
+    /**
+     * 批量部署的合约实例，按地址索引
+     */
+    private final Map<String, ERC20Test> deployedInstances = new ConcurrentHashMap<>();
 
     private ERC20Test contract;
+    private ERC20Test mintContract;
     @Getter
     private String contractAddress;
 
@@ -31,32 +51,63 @@ public class ERC20TestService {
      */
     public CompletableFuture<String> deployContract() {
         log.info("Deploying ERC20Test contract...");
-        return ERC20Test.deploy(web3j, credentials, gasProvider)
+        return ERC20Test.deploy(web3j, transactionManager, gasProvider)
                 .sendAsync()
                 .thenApply(deployedContract -> {
-                    this.contract = deployedContract;
+                    switchTailedContract(deployedContract.getContractAddress(), false);
+                    bindLanes(deployedContract.getContractAddress());
                     this.contractAddress = deployedContract.getContractAddress();
                     log.info("ERC20Test contract deployed to: {}", contractAddress);
                     return contractAddress;
                 });
     }
 
+    /**
+     * 批量部署ERC20合约：先按nonce顺序返回所有预先计算的合约地址（PLANNED），再流式返回每个地址的广播结果，
+     * 回执确认后登记合约实例
+     */
+    public Flowable<BulkDeploymentService.PlannedDeployment> deployContracts(int count) {
+        log.info("Bulk deploying {} ERC20Test contracts...", count);
+        return bulkDeploymentService.deploy(ERC20Test.BINARY, count,
+                address -> ERC20Test.load(address, web3j, transactionManager, gasProvider),
+                instance -> deployedInstances.put(instance.getContractAddress(), instance));
+    }
+
+    /**
+     * 获取已确认的批量部署合约地址
+     */
+    public Collection<String> getDeployedInstances() {
+        return deployedInstances.keySet();
+    }
+
     /**
      * 加载已部署的ERC20合约
      */
     public void loadContract(String contractAddress) {
         log.info("Loading ERC20Test contract from address: {}", contractAddress);
-        this.contract = ERC20Test.load(contractAddress, web3j, credentials, gasProvider);
+        switchTailedContract(contractAddress, true);
+        bindLanes(contractAddress);
         this.contractAddress = contractAddress;
     }
 
+    /**
+     * 用户发起的转账/授权走高优先级通道，铸造走批量通道，避免大量铸造交易占满nonce序列
+     */
+    private void bindLanes(String address) {
+        this.contract = ERC20Test.load(address, web3j,
+                transactionManager.forLane(NonceTrackingTransactionManager.Lane.HIGH), gasProvider);
+        this.mintContract = ERC20Test.load(address, web3j,
+                transactionManager.forLane(NonceTrackingTransactionManager.Lane.BULK), gasProvider);
+    }
+
     /**
      * 铸造代币
      */
     public CompletableFuture<TransactionReceipt> mint(String to, BigInteger amount) {
         validateContractLoaded();
         log.info("Minting {} tokens to {} (contract: {})", amount, to, contractAddress);
-        return contract.mint(to, amount).sendAsync();
+        return ChainCallEvent.timeCall("erc20.mint", contractAddress, () -> mintContract.mint(to, amount).sendAsync())
+                .thenApply(lookupService::cache);
     }
 
     /**
@@ -65,7 +116,8 @@ public class ERC20TestService {
     public CompletableFuture<TransactionReceipt> transfer(String to, BigInteger amount) {
         validateContractLoaded();
         log.info("Transferring {} tokens to {} (contract: {})", amount, to, contractAddress);
-        return contract.transfer(to, amount).sendAsync();
+        return ChainCallEvent.timeCall("erc20.transfer", contractAddress, () -> contract.transfer(to, amount).sendAsync())
+                .thenApply(lookupService::cache);
     }
 
     /**
@@ -83,7 +135,8 @@ public class ERC20TestService {
     public CompletableFuture<TransactionReceipt> approve(String spender, BigInteger amount) {
         validateContractLoaded();
         log.info("Approving {} tokens to spender {} (contract: {})", amount, spender, contractAddress);
-        return contract.approve(spender, amount).sendAsync();
+        return ChainCallEvent.timeCall("erc20.approve", contractAddress, () -> contract.approve(spender, amount).sendAsync())
+                .thenApply(lookupService::cache);
     }
 
     /**
@@ -92,7 +145,66 @@ public class ERC20TestService {
     public CompletableFuture<TransactionReceipt> transferFrom(String from, String to, BigInteger amount) {
         validateContractLoaded();
         log.info("Transferring {} tokens from {} to {} (contract: {})", amount, from, to, contractAddress);
-        return contract.transferFrom(from, to, amount).sendAsync();
+        return ChainCallEvent.timeCall("erc20.transferFrom", contractAddress, () -> contract.transferFrom(from, to, amount).sendAsync())
+                .thenApply(lookupService::cache);
+    }
+
+    /**
+     * 授权转账的调用方，即transferFrom所需授权额度的被授权地址
+     */
+    public String getSpenderAddress() {
+        return transactionManager.getFromAddress();
+    }
+
+    /**
+     * 分段并发回填历史Transfer事件（按区块顺序输出）
+     */
+    public Flowable<ERC20Test.TransferEventResponse> transferEventBackfill(BigInteger startBlock, BigInteger endBlock) {
+        validateContractLoaded();
+        log.info("Backfilling Transfer events from block {} to {} (contract: {})", startBlock, endBlock, contractAddress);
+        return backfillService.backfill(List.of(contractAddress), List.of(Erc20LogDecoder.TRANSFER_TOPIC),
+                        startBlock, endBlock)
+                .map(Erc20LogDecoder::toTransferEvent);
+    }
+
+    /**
+     * 回放截至指定区块的Transfer事件，计算该区块结束时所有持有人的余额（订阅时才开始计算）
+     */
+    public Flowable<HolderSnapshotService.HolderBalance> holderSnapshot(BigInteger blockNumber) {
+        validateContractLoaded();
+        log.info("Building holder snapshot at block {} (contract: {})", blockNumber, contractAddress);
+        return snapshotService.snapshot(contractAddress, blockNumber.longValueExact());
+    }
+
+    /**
+     * 实时订阅当前合约的Transfer事件
+     */
+    public Flowable<ERC20Test.TransferEventResponse> transferEventTail() {
+        validateContractLoaded();
+        String address = contractAddress;
+        return eventTailer.transferEvents()
+                .filter(event -> address.equalsIgnoreCase(event.log.getAddress()));
+    }
+
+    /**
+     * 查询本地索引的余额，不访问节点
+     */
+    public Erc20BalanceIndexService.IndexedBalance indexedBalanceOf(String account) {
+        validateContractLoaded();
+        return balanceIndex.balanceOf(contractAddress, account);
+    }
+
+    /**
+     * 切换实时跟踪的合约，并为其建立余额索引
+     * @param replayHistory 是否先回放历史Transfer事件（新部署的合约无需回放）
+     */
+    private void switchTailedContract(String newAddress, boolean replayHistory) {
+        if (this.contractAddress != null && !this.contractAddress.equalsIgnoreCase(newAddress)) {
+            eventTailer.unwatch(this.contractAddress);
+            balanceIndex.untrack(this.contractAddress);
+        }
+        eventTailer.watch(newAddress);
+        balanceIndex.track(newAddress, replayHistory);
     }
 
     /**
@@ -0,0 +1,308 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.config.ChainHeadTracker;
+import com.wetech.demo.web3j.config.ChainReorgEvent;
+import com.wetech.demo.web3j.config.NewHeadEvent;
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.event.Erc20EventTailer;
+import com.wetech.demo.web3j.event.Erc20LogDecoder;
+import com.wetech.demo.web3j.event.Erc20LogRecord;
+import com.wetech.demo.web3j.state.BalanceStore;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every holder's balance of the tracked ERC20 contracts in a {@link BalanceStore}, built
+ * by replaying the contract's {@code Transfer} history up to the current head and then applying
+ * live events from {@link Erc20EventTailer}. Transfers applied within {@code reorg-depth} blocks
+ * of the head are journaled so a chain reorg can undo them; a dropped block that becomes
+ * canonical again is applied once more when the tailer fetches it again.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class Erc20BalanceIndexService {
+
+    private final Erc20EventTailer eventTailer;
+    private final LogBackfillService backfillService;
+    private final ChainHeadTracker headTracker;
+
+    @Value("${web3j.erc20.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${web3j.erc20.index.start-block:0}")
+    private long startBlock;
+
+    @Value("${web3j.erc20.index.expected-holders:1024}")
+    private int expectedHolders;
+
+    @Value("${web3j.erc20.index.reorg-depth:64}")
+    private int reorgDepth;
+
+    private final Map<String, TokenIndex> indexes = new ConcurrentHashMap<>();
+    /**
+     * Decode target for live events, only used on the tailer thread
+     */
+    private final Erc20LogRecord liveRecord = new Erc20LogRecord();
+    private Disposable subscription;
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            subscription = eventTailer.transferEvents().subscribe(this::onTransfer,
+                    error -> log.error("Balance index stopped following transfers", error));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        indexes.values().forEach(TokenIndex::close);
+    }
+
+    /**
+     * Start indexing the balances of a contract
+     * @param contractAddress the ERC20 contract address
+     * @param replayHistory whether to replay the transfers before the current head first;
+     *                      not needed for a contract deployed after the head
+     */
+    public void track(String contractAddress, boolean replayHistory) {
+        if (!enabled) {
+            return;
+        }
+        String address = contractAddress.toLowerCase(Locale.ROOT);
+        long head = headTracker.getHeadNumber();
+        TokenIndex index = new TokenIndex(head);
+        if (indexes.putIfAbsent(address, index) != null) {
+            return;
+        }
+        log.info("Indexing balances of {} from block {}", address, replayHistory ? startBlock : head + 1);
+        if (replayHistory && head >= startBlock) {
+            replay(address, index, head);
+            return;
+        }
+        if (replayHistory && head < 0) {
+            log.warn("Chain head unknown, balances of {} only reflect transfers from now on", address);
+            return;
+        }
+        synchronized (index) {
+            index.synced = true;
+        }
+    }
+
+    /**
+     * Stop indexing a contract and release its balances
+     */
+    public void untrack(String contractAddress) {
+        TokenIndex index = indexes.remove(contractAddress.toLowerCase(Locale.ROOT));
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    /**
+     * Look up an indexed balance without calling the node
+     * @param contractAddress the ERC20 contract address
+     * @param account the holder address
+     */
+    public IndexedBalance balanceOf(String contractAddress, String account) {
+        TokenIndex index = indexes.get(contractAddress.toLowerCase(Locale.ROOT));
+        if (index == null) {
+            throw new IllegalStateException("Balances of " + contractAddress + " are not indexed");
+        }
+        synchronized (index) {
+            return new IndexedBalance(index.store.balanceOf(account), index.appliedBlock, index.synced,
+                    index.store.holders().size());
+        }
+    }
+
+    /**
+     * Runs before the event tailer fetches the block's logs, so a block that becomes canonical
+     * again after a reorg is no longer orphaned when its transfers arrive
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onNewHead(NewHeadEvent event) {
+        long finalized = event.header().number() - reorgDepth;
+        for (TokenIndex index : indexes.values()) {
+            synchronized (index) {
+                index.orphaned.remove(event.header().hash());
+                index.journal.headMap(finalized, true).clear();
+            }
+        }
+    }
+
+    @EventListener
+    public void onReorg(ChainReorgEvent event) {
+        for (TokenIndex index : indexes.values()) {
+            synchronized (index) {
+                event.dropped().forEach(header -> index.orphan(header.hash()));
+                Map<Long, BlockJournal> undone = index.journal.tailMap(event.forkNumber(), false);
+                int count = 0;
+                for (BlockJournal blockJournal : undone.values()) {
+                    List<JournalEntry> entries = blockJournal.entries;
+                    for (int i = entries.size() - 1; i >= 0; i--) {
+                        entries.get(i).revert(index.store);
+                        count++;
+                    }
+                }
+                undone.clear();
+                index.appliedBlock = Math.min(index.appliedBlock, event.forkNumber());
+                if (count > 0) {
+                    log.warn("Reverted {} indexed transfer(s) after block {}", count, event.forkNumber());
+                }
+            }
+        }
+    }
+
+    private void replay(String address, TokenIndex index, long toBlock) {
+        Erc20LogRecord record = new Erc20LogRecord();
+        index.replay = backfillService.backfill(List.of(address), List.of(Erc20LogDecoder.TRANSFER_TOPIC),
+                        BigInteger.valueOf(startBlock), BigInteger.valueOf(toBlock))
+                .subscribeOn(Schedulers.io())
+                .subscribe(eventLog -> apply(index, eventLog, record),
+                        error -> log.error("Replaying transfers of {} failed, balances are incomplete: {}",
+                                address, error.getMessage()),
+                        () -> {
+                            synchronized (index) {
+                                index.synced = true;
+                            }
+                            log.info("Replayed transfers of {} up to block {} ({} holders)",
+                                    address, toBlock, index.store.holders().size());
+                        });
+    }
+
+    private void onTransfer(ERC20Test.TransferEventResponse event) {
+        TokenIndex index = indexes.get(event.log.getAddress().toLowerCase(Locale.ROOT));
+        if (index != null && event.log.getBlockNumber().longValueExact() > index.cutoff) {
+            apply(index, event.log, liveRecord);
+        }
+    }
+
+    private void apply(TokenIndex index, Log eventLog, Erc20LogRecord record) {
+        if (!Erc20LogDecoder.decode(eventLog, record) || record.getType() != Erc20LogRecord.Type.TRANSFER) {
+            return;
+        }
+        long block = record.getBlockNumber();
+        synchronized (index) {
+            if (index.isOrphaned(eventLog.getBlockHash())) {
+                return;
+            }
+            BlockJournal blockJournal = block > headTracker.getHeadNumber() - reorgDepth
+                    ? index.journal.computeIfAbsent(block, key -> new BlockJournal()) : null;
+            int logIndex = eventLog.getLogIndex() != null ? eventLog.getLogIndex().intValueExact() : -1;
+            if (blockJournal != null && logIndex >= 0) {
+                if (blockJournal.logIndexes.get(logIndex)) {
+                    // Fetched again after the block was re-announced
+                    return;
+                }
+                blockJournal.logIndexes.set(logIndex);
+            }
+            BalanceStore store = index.store;
+            int from = store.holder(record.getSourceBytes(), 0);
+            int to = store.holder(record.getTargetBytes(), 0);
+            JournalEntry entry;
+            if (record.valueFitsIn128Bits()) {
+                store.transfer(from, to, record.getValueWord(2), record.getValueWord(3));
+                entry = new JournalEntry(from, to, record.getValueWord(2), record.getValueWord(3), null);
+            } else {
+                BigInteger value = record.getValue();
+                store.transfer(from, to, value);
+                entry = new JournalEntry(from, to, 0, 0, value);
+            }
+            if (blockJournal != null) {
+                blockJournal.entries.add(entry);
+            }
+            index.appliedBlock = Math.max(index.appliedBlock, block);
+        }
+    }
+
+    /**
+     * An indexed balance
+     * @param balance the balance, negative if history before the start block was not replayed
+     * @param blockNumber the highest block whose transfers are applied
+     * @param synced whether the history replay has finished
+     * @param holders the number of addresses that ever held or sent the token
+     */
+    public record IndexedBalance(BigInteger balance, long blockNumber, boolean synced, int holders) {
+    }
+
+    private class TokenIndex {
+        private static final int ORPHANS = 256;
+
+        private final BalanceStore store = new BalanceStore(expectedHolders);
+        /**
+         * Live events at or below this block are covered by the history replay
+         */
+        private final long cutoff;
+        private final TreeMap<Long, BlockJournal> journal = new TreeMap<>();
+        private final Set<String> orphaned = new LinkedHashSet<>();
+        private long appliedBlock;
+        private boolean synced;
+        private volatile Disposable replay;
+
+        TokenIndex(long cutoff) {
+            this.cutoff = cutoff;
+            this.appliedBlock = cutoff;
+        }
+
+        void orphan(String blockHash) {
+            orphaned.add(blockHash);
+            if (orphaned.size() > ORPHANS) {
+                orphaned.remove(orphaned.iterator().next());
+            }
+        }
+
+        boolean isOrphaned(String blockHash) {
+            return blockHash != null && orphaned.contains(blockHash);
+        }
+
+        void close() {
+            if (replay != null) {
+                replay.dispose();
+            }
+        }
+    }
+
+    /**
+     * The transfers applied for one recent block, and which of its logs they came from
+     */
+    private static final class BlockJournal {
+        private final List<JournalEntry> entries = new ArrayList<>();
+        private final BitSet logIndexes = new BitSet();
+    }
+
+    private record JournalEntry(int from, int to, long valueHigh, long valueLow, BigInteger largeValue) {
+
+        void revert(BalanceStore store) {
+            if (largeValue != null) {
+                store.transfer(to, from, largeValue);
+            } else {
+                store.transfer(to, from, valueHigh, valueLow);
+            }
+        }
+    }
+}
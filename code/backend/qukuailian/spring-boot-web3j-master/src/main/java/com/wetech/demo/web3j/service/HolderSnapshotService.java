@@ -0,0 +1,302 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.config.ChainHeadTracker;
+import com.wetech.demo.web3j.event.Erc20LogDecoder;
+import com.wetech.demo.web3j.event.Erc20LogRecord;
+import com.wetech.demo.web3j.state.AddressInterner;
+import com.wetech.demo.web3j.state.BalanceStore;
+import io.reactivex.Flowable;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes every holder's balance of a token at a past block by replaying the token's
+ * {@code Transfer} logs up to that block. Balance changes are partitioned by address and
+ * aggregated in parallel, one {@link BalanceStore} per partition, each owned by a single
+ * worker thread. The result is streamed partition by partition, in the order the partitions
+ * finish applying their share, so the holder list is never materialized beyond the compact stores.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HolderSnapshotService {
+
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    private final LogBackfillService backfillService;
+    private final ChainHeadTracker headTracker;
+
+    @Value("${web3j.erc20.snapshot.partitions:0}")
+    private int partitions;
+
+    @Value("${web3j.erc20.snapshot.batch-size:1024}")
+    private int batchSize;
+
+    @Value("${web3j.erc20.snapshot.expected-holders:65536}")
+    private int expectedHolders;
+
+    @Value("${web3j.erc20.index.start-block:0}")
+    private long startBlock;
+
+    /**
+     * Stream the non-zero balances of all holders at the end of a block. The replay starts
+     * when the result is subscribed to.
+     * @param contractAddress the ERC20 contract address
+     * @param blockNumber the snapshot block
+     * @return the holders, in no particular order
+     */
+    public Flowable<HolderBalance> snapshot(String contractAddress, long blockNumber) {
+        long head = headTracker.getHeadNumber();
+        if (head >= 0 && blockNumber > head) {
+            throw new IllegalArgumentException("Block " + blockNumber + " is beyond the chain head " + head);
+        }
+        if (blockNumber < startBlock) {
+            throw new IllegalArgumentException("Block " + blockNumber + " is before the first replayed block " + startBlock);
+        }
+        int partitionCount = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+        return Flowable.using(
+                () -> new SnapshotRun(partitionCount),
+                run -> Flowable.defer(() -> {
+                    run.replay(backfillService.backfill(List.of(contractAddress),
+                            List.of(Erc20LogDecoder.TRANSFER_TOPIC),
+                            BigInteger.valueOf(startBlock), BigInteger.valueOf(blockNumber)));
+                    return Flowable.range(0, partitionCount)
+                            .concatMapIterable(ignored -> {
+                                int partition = run.nextCompleted();
+                                return () -> run.holders(partition);
+                            })
+                            .doOnComplete(() -> log.info("Snapshot of {} at block {}: {} addresses across {} partitions",
+                                    contractAddress, blockNumber, run.addressCount(), partitionCount));
+                }),
+                SnapshotRun::close);
+    }
+
+    /**
+     * One holder's balance at the snapshot block
+     */
+    public record HolderBalance(String address, BigInteger balance) {
+    }
+
+    /**
+     * Balance changes bound for one partition. Batches are recycled between the replay
+     * thread and the partition workers, which also bounds how far the replay runs ahead.
+     */
+    private static final class Batch {
+        private final byte[] addresses;
+        private final long[] high;
+        private final long[] low;
+        private final BigInteger[] large;
+        private final boolean[] debit;
+        private int size;
+
+        Batch(int capacity) {
+            addresses = new byte[capacity * AddressInterner.ADDRESS_LENGTH];
+            high = new long[capacity];
+            low = new long[capacity];
+            large = new BigInteger[capacity];
+            debit = new boolean[capacity];
+        }
+
+        boolean add(byte[] address, boolean isDebit, Erc20LogRecord record) {
+            System.arraycopy(address, 0, addresses, size * AddressInterner.ADDRESS_LENGTH,
+                    AddressInterner.ADDRESS_LENGTH);
+            debit[size] = isDebit;
+            if (record.valueFitsIn128Bits()) {
+                high[size] = record.getValueWord(2);
+                low[size] = record.getValueWord(3);
+            } else {
+                large[size] = record.getValue();
+            }
+            return ++size == high.length;
+        }
+
+        void applyTo(BalanceStore store) {
+            for (int i = 0; i < size; i++) {
+                int id = store.holder(addresses, i * AddressInterner.ADDRESS_LENGTH);
+                int from = debit[i] ? id : -1;
+                int to = debit[i] ? -1 : id;
+                if (large[i] != null) {
+                    store.transfer(from, to, large[i]);
+                } else {
+                    store.transfer(from, to, high[i], low[i]);
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(large, 0, size, null);
+            size = 0;
+        }
+    }
+
+    private class SnapshotRun {
+
+        private final Batch endOfStream = new Batch(0);
+        private final int partitionCount;
+        private final BalanceStore[] stores;
+        private final List<BlockingQueue<Batch>> queues = new ArrayList<>();
+        private final BlockingQueue<Batch> free;
+        private final ExecutorService workers;
+        private final CompletionService<Integer> completed;
+
+        SnapshotRun(int partitionCount) {
+            this.partitionCount = partitionCount;
+            this.stores = new BalanceStore[partitionCount];
+            int run = RUNS.incrementAndGet();
+            AtomicInteger threads = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(partitionCount, runnable -> {
+                Thread thread = new Thread(runnable, "holder-snapshot-" + run + "-" + threads.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.completed = new ExecutorCompletionService<>(workers);
+            int pooled = partitionCount * 3;
+            this.free = new ArrayBlockingQueue<>(pooled);
+            for (int i = 0; i < pooled; i++) {
+                free.add(new Batch(batchSize));
+            }
+            for (int partition = 0; partition < partitionCount; partition++) {
+                BalanceStore store = new BalanceStore(Math.max(16, expectedHolders / partitionCount));
+                BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(pooled + 1);
+                stores[partition] = store;
+                queues.add(queue);
+                int drained = partition;
+                completed.submit(() -> {
+                    drain(queue, store);
+                    return drained;
+                });
+            }
+        }
+
+        /**
+         * Replay the logs, returning once every partition has been handed its share; the
+         * partitions may still be applying it
+         */
+        void replay(Flowable<Log> logs) throws InterruptedException {
+            Erc20LogRecord record = new Erc20LogRecord();
+            Batch[] open = new Batch[partitionCount];
+            for (Log eventLog : logs.blockingIterable()) {
+                if (!Erc20LogDecoder.decode(eventLog, record) || record.getType() != Erc20LogRecord.Type.TRANSFER) {
+                    continue;
+                }
+                route(open, record.getSourceBytes(), true, record);
+                route(open, record.getTargetBytes(), false, record);
+            }
+            for (int partition = 0; partition < partitionCount; partition++) {
+                if (open[partition] != null) {
+                    queues.get(partition).put(open[partition]);
+                }
+                queues.get(partition).put(endOfStream);
+            }
+        }
+
+        /**
+         * Wait for the next partition to finish applying its share
+         * @return the partition, whose holders are then final
+         */
+        int nextCompleted() throws InterruptedException, ExecutionException {
+            return completed.take().get();
+        }
+
+        /**
+         * Only meaningful once every partition has completed
+         */
+        int addressCount() {
+            return Arrays.stream(stores).mapToInt(store -> store.holders().size()).sum();
+        }
+
+        Iterator<HolderBalance> holders(int partition) {
+            BalanceStore store = stores[partition];
+            return new Iterator<>() {
+                private int next = advance(0);
+
+                private int advance(int from) {
+                    int id = from;
+                    while (id < store.holders().size() && store.isZero(id)) {
+                        id++;
+                    }
+                    return id;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < store.holders().size();
+                }
+
+                @Override
+                public HolderBalance next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    HolderBalance holder = new HolderBalance(store.holders().address(next), store.balanceOf(next));
+                    next = advance(next + 1);
+                    return holder;
+                }
+            };
+        }
+
+        void close() {
+            workers.shutdownNow();
+        }
+
+        private void route(Batch[] open, byte[] address, boolean isDebit, Erc20LogRecord record)
+                throws InterruptedException {
+            if (AddressInterner.isZeroAddress(address, 0)) {
+                return;
+            }
+            int partition = partitionOf(address);
+            if (open[partition] == null) {
+                open[partition] = free.take();
+            }
+            if (open[partition].add(address, isDebit, record)) {
+                queues.get(partition).put(open[partition]);
+                open[partition] = null;
+            }
+        }
+
+        private int partitionOf(byte[] address) {
+            int h = (address[16] & 0xff) << 24 | (address[17] & 0xff) << 16
+                    | (address[18] & 0xff) << 8 | (address[19] & 0xff);
+            h *= 0x9E3779B9;
+            return Math.floorMod(h ^ (h >>> 16), partitionCount);
+        }
+
+        private void drain(BlockingQueue<Batch> queue, BalanceStore store) throws InterruptedException {
+            RuntimeException failure = null;
+            for (Batch batch = queue.take(); batch != endOfStream; batch = queue.take()) {
+                // Keep recycling batches after a failure so the replay thread never starves
+                try {
+                    if (failure == null) {
+                        batch.applyTo(store);
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                } finally {
+                    batch.clear();
+                    free.put(batch);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.config.RpcClientFactory;
+import io.reactivex.Flowable;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Backfills historical logs by splitting a block range into chunks that are fetched
+ * concurrently across the configured endpoints and delivered to subscribers in block order.
+ * The chunk size halves when a node rejects a range for returning too many results and
+ * doubles again while ranges stay sparse.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogBackfillService {
+
+    private static final List<String> RESULT_LIMIT_MARKERS = List.of(
+            "query returned more than",
+            "too many",
+            "limit exceeded",
+            "response size",
+            "block range",
+            "range is too large",
+            "timeout",
+            "timed out");
+
+    private final Web3j web3j;
+    private final RpcClientFactory rpcClientFactory;
+
+    @Value("${web3j.backfill.endpoints:}")
+    private List<String> endpoints;
+
+    @Value("${web3j.backfill.parallelism:8}")
+    private int parallelism;
+
+    @Value("${web3j.backfill.initial-chunk-size:2000}")
+    private long initialChunkSize;
+
+    @Value("${web3j.backfill.max-chunk-size:100000}")
+    private long maxChunkSize;
+
+    @Value("${web3j.backfill.target-logs-per-chunk:5000}")
+    private int targetLogsPerChunk;
+
+    @Value("${web3j.backfill.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${web3j.backfill.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    private final List<Web3j> clients = new ArrayList<>();
+    private final AtomicInteger nextClient = new AtomicInteger();
+
+    @PostConstruct
+    void init() {
+        for (String endpoint : endpoints) {
+            if (!endpoint.isBlank()) {
+                log.info("Adding log backfill endpoint: {}", endpoint);
+                clients.add(rpcClientFactory.create("backfill-" + clients.size(), endpoint.trim()));
+            }
+        }
+        if (clients.isEmpty()) {
+            clients.add(web3j);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        clients.stream().filter(client -> client != web3j).forEach(Web3j::shutdown);
+    }
+
+    /**
+     * Fetch all logs emitted by the given contracts between two blocks (inclusive)
+     * @param addresses the contract addresses to match
+     * @param topics the accepted topic0 values, empty to accept any event
+     * @param fromBlock the first block of the range
+     * @param toBlock the last block of the range
+     * @return the matching logs in block order
+     */
+    public Flowable<Log> backfill(List<String> addresses, List<String> topics,
+                                  BigInteger fromBlock, BigInteger toBlock) {
+        if (fromBlock.compareTo(toBlock) > 0) {
+            throw new IllegalArgumentException("fromBlock must not be after toBlock");
+        }
+        log.info("Backfilling logs of {} from block {} to {}", addresses, fromBlock, toBlock);
+        return Flowable.using(
+                () -> new BackfillRun(addresses, topics, fromBlock.longValueExact(), toBlock.longValueExact()),
+                run -> Flowable.fromIterable(() -> run).concatMapIterable(logs -> logs),
+                BackfillRun::close);
+    }
+
+    private Web3j nextClient() {
+        return clients.get(Math.floorMod(nextClient.getAndIncrement(), clients.size()));
+    }
+
+    private static boolean isResultLimitError(String message) {
+        if (message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        return RESULT_LIMIT_MARKERS.stream().anyMatch(lower::contains);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * One backfill over a block range. Keeps up to {@code parallelism} chunks in flight
+     * and hands them out in order, so a slow subscriber naturally throttles the fetching.
+     */
+    private class BackfillRun implements Iterator<List<Log>> {
+
+        private final List<String> addresses;
+        private final List<String> topics;
+        private final long endBlock;
+        private final AtomicLong chunkSize = new AtomicLong(initialChunkSize);
+        private final ArrayDeque<CompletableFuture<List<Log>>> inFlight = new ArrayDeque<>();
+        private long nextBlock;
+
+        BackfillRun(List<String> addresses, List<String> topics, long fromBlock, long toBlock) {
+            this.addresses = addresses;
+            this.topics = topics;
+            this.nextBlock = fromBlock;
+            this.endBlock = toBlock;
+        }
+
+        @Override
+        public boolean hasNext() {
+            schedule();
+            return !inFlight.isEmpty();
+        }
+
+        @Override
+        public List<Log> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<Log> logs = inFlight.poll().join();
+            schedule();
+            return logs;
+        }
+
+        void close() {
+            inFlight.forEach(future -> future.cancel(true));
+            inFlight.clear();
+        }
+
+        private void schedule() {
+            while (inFlight.size() < parallelism && nextBlock <= endBlock) {
+                long chunkEnd = Math.min(endBlock, nextBlock + chunkSize.get() - 1);
+                inFlight.add(fetch(nextBlock, chunkEnd, 0));
+                nextBlock = chunkEnd + 1;
+            }
+        }
+
+        private CompletableFuture<List<Log>> fetch(long from, long to, int attempt) {
+            EthFilter filter = new EthFilter(
+                    DefaultBlockParameter.valueOf(BigInteger.valueOf(from)),
+                    DefaultBlockParameter.valueOf(BigInteger.valueOf(to)),
+                    addresses);
+            if (!topics.isEmpty()) {
+                filter.addOptionalTopics(topics.toArray(String[]::new));
+            }
+            return nextClient().ethGetLogs(filter).sendAsync()
+                    .handle((response, error) -> {
+                        if (error == null && !response.hasError()) {
+                            return CompletableFuture.completedFuture(onSuccess(from, to, response));
+                        }
+                        Throwable cause = error != null ? unwrap(error) : null;
+                        String message = cause != null ? cause.getMessage() : response.getError().getMessage();
+                        boolean limited = cause instanceof InterruptedIOException || isResultLimitError(message);
+                        if (limited && from < to) {
+                            return split(from, to);
+                        }
+                        return retry(from, to, attempt, message);
+                    })
+                    .thenCompose(future -> future);
+        }
+
+        private List<Log> onSuccess(long from, long to, EthLog response) {
+            List<Log> logs = new ArrayList<>(response.getLogs().size());
+            for (EthLog.LogResult<?> result : response.getLogs()) {
+                logs.add((Log) result.get());
+            }
+            long span = to - from + 1;
+            if (logs.size() < targetLogsPerChunk / 4) {
+                chunkSize.accumulateAndGet(span, (current, fetched) ->
+                        fetched >= current ? Math.min(maxChunkSize, current * 2) : current);
+            }
+            return logs;
+        }
+
+        private CompletableFuture<List<Log>> split(long from, long to) {
+            long mid = from + (to - from) / 2;
+            chunkSize.accumulateAndGet(Math.max(1, (to - from + 1) / 2), Math::min);
+            log.debug("Splitting log range {}-{} (chunk size now {})", from, to, chunkSize.get());
+            return fetch(from, mid, 0).thenCombine(fetch(mid + 1, to, 0), (left, right) -> {
+                List<Log> logs = new ArrayList<>(left.size() + right.size());
+                logs.addAll(left);
+                logs.addAll(right);
+                return logs;
+            });
+        }
+
+        private CompletableFuture<List<Log>> retry(long from, long to, int attempt, String message) {
+            if (attempt >= maxRetries) {
+                return CompletableFuture.failedFuture(new IllegalStateException(
+                        "eth_getLogs failed for blocks " + from + "-" + to + ": " + message));
+            }
+            long delay = retryBackoffMs << attempt;
+            log.warn("eth_getLogs failed for blocks {}-{} ({}), retrying in {} ms", from, to, message, delay);
+            return CompletableFuture.supplyAsync(() -> fetch(from, to, attempt + 1),
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(future -> future);
+        }
+    }
+}
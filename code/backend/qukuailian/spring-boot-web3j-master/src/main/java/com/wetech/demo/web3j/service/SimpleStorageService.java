@@ -1,27 +1,67 @@
 package com.wetech.demo.web3j.service;
 
+import com.wetech.demo.web3j.config.BlockHeader;
+import com.wetech.demo.web3j.config.ChainHeadTracker;
+import com.wetech.demo.web3j.config.NonceTrackingTransactionManager;
 import com.wetech.demo.web3j.contracts.simplestorage.SimpleStorage;
+import com.wetech.demo.web3j.diagnostics.ChainCallEvent;
+import io.reactivex.Flowable;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.web3j.crypto.Credentials;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.tx.gas.ContractGasProvider;
+import org.web3j.utils.Numeric;
 
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SimpleStorageService {
 
+    /**
+     * Storage slot of {@code storedData}, the only state variable of SimpleStorage
+     */
+    private static final BigInteger STORED_DATA_SLOT = BigInteger.ZERO;
+
     private final Web3j web3j;
-    private final Credentials credentials;
+    private final NonceTrackingTransactionManager transactionManager;
     private final ContractGasProvider gasProvider;
-    
+    private final BulkDeploymentService bulkDeploymentService;
+    private final ChainHeadTracker headTracker;
+
+    @Value("${web3j.storage.coalesce.enabled:false}")
+    private boolean coalesceEnabled;
+
+    @Value("${web3j.storage.coalesce.window-ms:2000}")
+    private long coalesceWindowMs;
+
+    @Value("${web3j.storage.slot-cache-ms:1000}")
+    private long slotCacheMs;
+
+    private final Object coalesceLock = new Object();
+    private PendingWrite pendingWrite;
+
+    private volatile CachedSlot slotValue;
+
+    /**
+     * Instances created by bulk deployments, keyed by address
+     */
+    private final Map<String, SimpleStorage> deployedInstances = new ConcurrentHashMap<>();
+
     private SimpleStorage contract;
     /**
      * -- GETTER --
@@ -38,7 +78,7 @@ public class SimpleStorageService {
      */
     public CompletableFuture<String> deployContract() {
         log.info("Deploying SimpleStorage contract...");
-        return SimpleStorage.deploy(web3j, credentials, gasProvider)
+        return SimpleStorage.deploy(web3j, transactionManager, gasProvider)
                 .sendAsync()
                 .thenApply(contract -> {
                     this.contract = contract;
@@ -48,13 +88,35 @@ public class SimpleStorageService {
                 });
     }
 
+    /**
+     * Deploy many SimpleStorage contracts at once. The addresses are computed locally and
+     * reported up front, then again as each deployment is broadcast; each instance is
+     * registered once its deployment is mined.
+     * @param count the number of contracts to deploy
+     * @return the planned deployments, then the broadcast or failed ones, in nonce order
+     */
+    public Flowable<BulkDeploymentService.PlannedDeployment> deployContracts(int count) {
+        log.info("Bulk deploying {} SimpleStorage contracts...", count);
+        return bulkDeploymentService.deploy(SimpleStorage.BINARY, count,
+                address -> SimpleStorage.load(address, web3j, transactionManager, gasProvider),
+                instance -> deployedInstances.put(instance.getContractAddress(), instance));
+    }
+
+    /**
+     * Get the addresses of the bulk deployed contracts that are confirmed
+     * @return the contract addresses
+     */
+    public Collection<String> getDeployedInstances() {
+        return deployedInstances.keySet();
+    }
+
     /**
      * Load an existing contract from the blockchain
      * @param contractAddress the address of the contract to load
      */
     public void loadContract(String contractAddress) {
         log.info("Loading SimpleStorage contract from address: {}", contractAddress);
-        this.contract = SimpleStorage.load(contractAddress, web3j, credentials, gasProvider);
+        this.contract = SimpleStorage.load(contractAddress, web3j, transactionManager, gasProvider);
         this.contractAddress = contractAddress;
     }
 
@@ -70,6 +132,81 @@ public class SimpleStorageService {
         return contract.get().sendAsync();
     }
 
+    /**
+     * Get the current value by reading its storage slot at the latest block. The result is
+     * cached per head block hash, so repeated reads within a block cost no RPC call, and for
+     * {@code web3j.storage.slot-cache-ms} when the head is not tracked.
+     * @return the stored value and the block it was last seen to change at, empty if the node
+     * has no latest block to read at yet
+     */
+    public CompletableFuture<Optional<SlotValue>> getValueFromSlot() {
+        if (contract == null) {
+            throw new IllegalStateException("Contract not deployed or loaded");
+        }
+        String address = contractAddress;
+        BlockHeader head = headTracker.getHead().orElse(null);
+        CachedSlot cached = slotValue;
+        if (cached != null && cached.value().contractAddress().equals(address) && (head != null
+                ? cached.value().blockHash().equals(head.hash())
+                : System.nanoTime() - cached.readAtNanos() < TimeUnit.MILLISECONDS.toNanos(slotCacheMs))) {
+            return CompletableFuture.completedFuture(Optional.of(cached.value()));
+        }
+        CompletableFuture<Optional<BlockHeader>> pinned = head != null
+                ? CompletableFuture.completedFuture(Optional.of(head))
+                : web3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).sendAsync()
+                        .thenApply(block -> Optional.ofNullable(block.getBlock()).map(BlockHeader::of));
+        return pinned.thenCompose(block -> block.isEmpty()
+                ? CompletableFuture.completedFuture(Optional.empty())
+                : readSlot(address, block.get()).thenApply(Optional::of));
+    }
+
+    private CompletableFuture<SlotValue> readSlot(String address, BlockHeader block) {
+        return web3j.ethGetStorageAt(address, STORED_DATA_SLOT,
+                        DefaultBlockParameter.valueOf(BigInteger.valueOf(block.number()))).sendAsync()
+                .thenApply(response -> {
+                    if (response.hasError()) {
+                        throw new IllegalStateException("eth_getStorageAt failed: " + response.getError().getMessage());
+                    }
+                    return updateSlotValue(address, block, Numeric.toBigInt(response.getData()));
+                });
+    }
+
+    private synchronized SlotValue updateSlotValue(String address, BlockHeader block, BigInteger value) {
+        SlotValue cached = slotValue != null ? slotValue.value() : null;
+        SlotValue updated;
+        if (cached != null && cached.contractAddress().equals(address)) {
+            // A concurrent read at a later block that is still canonical wins
+            if (cached.blockNumber() > block.number() && headTracker.getHeader(cached.blockNumber())
+                    .map(header -> header.hash().equals(cached.blockHash())).orElse(true)) {
+                return cached;
+            }
+            if (cached.value().equals(value)) {
+                updated = new SlotValue(address, value, block.number(), block.hash(),
+                        cached.changedAtBlock(), cached.changedAtTimestamp());
+                slotValue = new CachedSlot(updated, System.nanoTime());
+                return updated;
+            }
+        }
+        log.debug("Storage slot of {} is {} at block {}", address, value, block.number());
+        updated = new SlotValue(address, value, block.number(), block.hash(), block.number(), block.timestamp());
+        slotValue = new CachedSlot(updated, System.nanoTime());
+        return updated;
+    }
+
+    /**
+     * A value read from the storage slot
+     * @param blockNumber the block the slot was read at
+     * @param blockHash the hash of that block
+     * @param changedAtBlock the first block this value was observed at
+     * @param changedAtTimestamp the timestamp of that block, in seconds
+     */
+    public record SlotValue(String contractAddress, BigInteger value, long blockNumber, String blockHash,
+                            long changedAtBlock, long changedAtTimestamp) {
+    }
+
+    private record CachedSlot(SlotValue value, long readAtNanos) {
+    }
+
     /**
      * Set a new value in the contract
      * @param value the new value to store
@@ -79,7 +216,77 @@ public class SimpleStorageService {
         if (contract == null) {
             throw new IllegalStateException("Contract not deployed or loaded");
         }
+        if (coalesceEnabled) {
+            return ChainCallEvent.timeCall("storage.set", contractAddress, () -> coalesceSetValue(value));
+        }
         log.info("Setting value {} in contract at address: {}", value, contractAddress);
-        return contract.set(value).sendAsync();
+        return ChainCallEvent.timeCall("storage.set", contractAddress, () -> contract.set(value).sendAsync());
+    }
+
+    /**
+     * Queue a value into the current coalescing window. Only the last value of the window is
+     * sent, and every caller of the window gets the receipt of that single transaction.
+     * @param value the new value to store
+     * @return the receipt of the shared transaction
+     */
+    private CompletableFuture<TransactionReceipt> coalesceSetValue(BigInteger value) {
+        PendingWrite stale = null;
+        CompletableFuture<TransactionReceipt> receipt;
+        synchronized (coalesceLock) {
+            if (pendingWrite != null && pendingWrite.contract != contract) {
+                stale = pendingWrite;
+                pendingWrite = null;
+            }
+            if (pendingWrite == null) {
+                PendingWrite batch = new PendingWrite(contract);
+                pendingWrite = batch;
+                CompletableFuture.delayedExecutor(coalesceWindowMs, TimeUnit.MILLISECONDS)
+                        .execute(() -> flushPendingWrite(batch));
+            }
+            pendingWrite.value = value;
+            pendingWrite.requests++;
+            receipt = pendingWrite.receipt.copy();
+        }
+        if (stale != null) {
+            flush(stale);
+        }
+        log.debug("Queued value {} for coalesced write to contract at address: {}", value, contractAddress);
+        return receipt;
+    }
+
+    private void flushPendingWrite(PendingWrite batch) {
+        synchronized (coalesceLock) {
+            if (pendingWrite != batch) {
+                return;
+            }
+            pendingWrite = null;
+        }
+        flush(batch);
+    }
+
+    private void flush(PendingWrite batch) {
+        log.info("Setting value {} in contract at address: {} (coalesced {} requests)",
+                batch.value, batch.contract.getContractAddress(), batch.requests);
+        batch.contract.set(batch.value).sendAsync().whenComplete((receipt, error) -> {
+            if (error != null) {
+                batch.receipt.completeExceptionally(error);
+            } else {
+                batch.receipt.complete(receipt);
+            }
+        });
+    }
+
+    /**
+     * The set requests collected during one coalescing window
+     */
+    private static final class PendingWrite {
+        private final SimpleStorage contract;
+        private final CompletableFuture<TransactionReceipt> receipt = new CompletableFuture<>();
+        private BigInteger value;
+        private int requests;
+
+        private PendingWrite(SimpleStorage contract) {
+            this.contract = contract;
+        }
     }
 }
\ No newline at end of file
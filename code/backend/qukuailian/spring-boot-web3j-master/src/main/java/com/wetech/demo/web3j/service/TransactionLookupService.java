@@ -0,0 +1,210 @@
+package com.wetech.demo.web3j.service;
+
+import com.wetech.demo.web3j.config.BlockHeader;
+import com.wetech.demo.web3j.config.ChainHeadTracker;
+import com.wetech.demo.web3j.config.ChainReorgEvent;
+import com.wetech.demo.web3j.config.NewHeadEvent;
+import com.wetech.demo.web3j.contracts.erc20test.ERC20Test;
+import com.wetech.demo.web3j.event.Erc20LogDecoder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up transactions by hash behind an LRU cache of receipts and their decoded ERC20
+ * events. An entry becomes immutable once its block is {@code confirmations} deep; until then
+ * it is re-checked against the canonical chain on every new head and dropped when a reorg
+ * orphans its block. Pending transactions are never cached.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TransactionLookupService {
+
+    private final Web3j web3j;
+    private final ChainHeadTracker headTracker;
+
+    @Value("${web3j.tx-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${web3j.tx-cache.confirmations:12}")
+    private int confirmations;
+
+    private final Map<String, MinedTransaction> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MinedTransaction> eldest) {
+            if (size() > maxEntries) {
+                shallow.remove(eldest.getKey());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Entries not yet deep enough to be final, checked on every head
+     */
+    private final Map<String, MinedTransaction> shallow = new ConcurrentHashMap<>();
+
+    /**
+     * Look up a transaction
+     * @param transactionHash the transaction hash
+     * @return the mined or pending transaction, empty if the node does not know it
+     */
+    public CompletableFuture<Optional<TransactionLookup>> lookup(String transactionHash) {
+        String key = transactionHash.toLowerCase(Locale.ROOT);
+        MinedTransaction cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Optional.of(TransactionLookup.mined(cached, depthOf(cached))));
+        }
+        return web3j.ethGetTransactionReceipt(transactionHash).sendAsync()
+                .thenCompose(response -> {
+                    if (response.getTransactionReceipt().isPresent()) {
+                        MinedTransaction mined = remember(response.getTransactionReceipt().get());
+                        return CompletableFuture.completedFuture(
+                                Optional.of(TransactionLookup.mined(mined, depthOf(mined))));
+                    }
+                    return web3j.ethGetTransactionByHash(transactionHash).sendAsync()
+                            .thenApply(pending -> pending.getTransaction().map(TransactionLookup::pending));
+                });
+    }
+
+    /**
+     * Cache a receipt the application already holds, e.g. the one a mint or transfer returned.
+     * Best effort: a receipt that cannot be cached is logged and skipped, never failing the caller.
+     * @return the same receipt, for chaining
+     */
+    public TransactionReceipt cache(TransactionReceipt receipt) {
+        try {
+            remember(receipt);
+        } catch (RuntimeException e) {
+            log.warn("Not caching receipt of {}: {}", receipt.getTransactionHash(), e.toString());
+        }
+        return receipt;
+    }
+
+    @EventListener
+    public void onNewHead(NewHeadEvent event) {
+        long head = event.header().number();
+        for (Iterator<MinedTransaction> iterator = shallow.values().iterator(); iterator.hasNext(); ) {
+            MinedTransaction entry = iterator.next();
+            long block = entry.receipt().getBlockNumber().longValueExact();
+            if (head - block + 1 < confirmations) {
+                continue;
+            }
+            Optional<BlockHeader> canonical = headTracker.getHeader(block);
+            if (canonical.isPresent() && !canonical.get().hash().equalsIgnoreCase(entry.receipt().getBlockHash())) {
+                evict(entry);
+            } else {
+                entry.finalized = true;
+            }
+            iterator.remove();
+        }
+    }
+
+    @EventListener
+    public void onReorg(ChainReorgEvent event) {
+        int evicted = 0;
+        for (MinedTransaction entry : shallow.values()) {
+            if (entry.receipt().getBlockNumber().longValueExact() > event.forkNumber()) {
+                evict(entry);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.info("Dropped {} cached receipt(s) orphaned after block {}", evicted, event.forkNumber());
+        }
+    }
+
+    private MinedTransaction remember(TransactionReceipt receipt) {
+        MinedTransaction entry = new MinedTransaction(receipt,
+                Erc20LogDecoder.getTransferEvents(receipt), Erc20LogDecoder.getApprovalEvents(receipt));
+        String key = receipt.getTransactionHash().toLowerCase(Locale.ROOT);
+        long depth = headTracker.getConfirmations(receipt.getBlockNumber().longValueExact());
+        entry.finalized = depth >= confirmations;
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+        if (!entry.finalized) {
+            shallow.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void evict(MinedTransaction entry) {
+        String key = entry.receipt().getTransactionHash().toLowerCase(Locale.ROOT);
+        shallow.remove(key, entry);
+        synchronized (cache) {
+            cache.remove(key, entry);
+        }
+    }
+
+    private long depthOf(MinedTransaction entry) {
+        return headTracker.getConfirmations(entry.receipt().getBlockNumber().longValueExact());
+    }
+
+    /**
+     * A cached receipt with its ERC20 events decoded once
+     */
+    public static final class MinedTransaction {
+        private final TransactionReceipt receipt;
+        private final List<ERC20Test.TransferEventResponse> transfers;
+        private final List<ERC20Test.ApprovalEventResponse> approvals;
+        private volatile boolean finalized;
+
+        private MinedTransaction(TransactionReceipt receipt, List<ERC20Test.TransferEventResponse> transfers,
+                                 List<ERC20Test.ApprovalEventResponse> approvals) {
+            this.receipt = receipt;
+            this.transfers = List.copyOf(transfers);
+            this.approvals = List.copyOf(approvals);
+        }
+
+        public TransactionReceipt receipt() {
+            return receipt;
+        }
+
+        public List<ERC20Test.TransferEventResponse> transfers() {
+            return transfers;
+        }
+
+        public List<ERC20Test.ApprovalEventResponse> approvals() {
+            return approvals;
+        }
+    }
+
+    /**
+     * The result of a lookup
+     * @param mined the cached receipt and events, null while pending
+     * @param pending the transaction as known to the node, null once mined
+     * @param confirmations blocks on top of the including block, -1 if pending or the head is unknown
+     * @param finalized whether the entry is deep enough to never change
+     */
+    public record TransactionLookup(MinedTransaction mined, Transaction pending,
+                                    long confirmations, boolean finalized) {
+
+        static TransactionLookup mined(MinedTransaction mined, long confirmations) {
+            return new TransactionLookup(mined, null, confirmations, mined.finalized);
+        }
+
+        static TransactionLookup pending(Transaction transaction) {
+            return new TransactionLookup(null, transaction, -1, false);
+        }
+    }
+}
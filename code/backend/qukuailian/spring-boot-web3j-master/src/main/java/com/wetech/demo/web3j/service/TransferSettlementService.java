@@ -0,0 +1,185 @@
+package com.wetech.demo.web3j.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 授权转账结算队列：在时间窗口内累积transferFrom请求，按(from, to)地址对轧差，
+ * 只提交每对地址的净额转账，并把结果映射回每个请求
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TransferSettlementService {
+
+    private final ERC20TestService erc20Service;
+
+    @Value("${web3j.erc20.settlement.window-ms:2000}")
+    private long windowMs;
+
+    private List<SettlementRequest> pending;
+
+    /**
+     * 提交一笔待结算的授权转账
+     */
+    public CompletableFuture<SettlementResult> submit(String from, String to, BigInteger amount) {
+        if (amount.signum() <= 0) {
+            throw new IllegalArgumentException("amount must be positive");
+        }
+        if (erc20Service.getContractAddress() == null) {
+            throw new IllegalStateException("ERC20 contract not deployed or loaded");
+        }
+        SettlementRequest request = new SettlementRequest(from, to, amount, new CompletableFuture<>());
+        synchronized (this) {
+            if (pending == null) {
+                pending = new ArrayList<>();
+                CompletableFuture.delayedExecutor(windowMs, TimeUnit.MILLISECONDS).execute(this::settle);
+            }
+            pending.add(request);
+        }
+        log.info("Queued settlement of {} tokens from {} to {}", amount, from, to);
+        return request.result();
+    }
+
+    /**
+     * 结算当前窗口：每对地址的双向流量轧差后最多发送一笔转账。每个付款方的可转出额度在本窗口内只查询一次，
+     * 由所有地址对共享，每对地址的净额转账从净付款方的剩余额度中扣除
+     */
+    private void settle() {
+        List<SettlementRequest> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = null;
+        }
+        Map<String, List<SettlementRequest>> pairs = new LinkedHashMap<>();
+        for (SettlementRequest request : batch) {
+            pairs.computeIfAbsent(pairKey(request.from(), request.to()), key -> new ArrayList<>()).add(request);
+        }
+        log.info("Settling {} transferFrom requests as at most {} net transfers", batch.size(), pairs.size());
+        String spender = erc20Service.getSpenderAddress();
+        Map<String, CompletableFuture<BigInteger>> limits = new LinkedHashMap<>();
+        for (SettlementRequest request : batch) {
+            limits.computeIfAbsent(request.from().toLowerCase(Locale.ROOT), owner -> spendableBy(owner, spender));
+        }
+        CompletableFuture.allOf(limits.values().toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+            if (error != null) {
+                batch.forEach(request -> request.result().completeExceptionally(error));
+                return;
+            }
+            Map<String, BigInteger> remaining = new LinkedHashMap<>();
+            limits.forEach((owner, limit) -> remaining.put(owner, limit.join()));
+            for (List<SettlementRequest> requests : pairs.values()) {
+                List<SettlementRequest> accepted = acceptWithin(requests, remaining);
+                if (!accepted.isEmpty()) {
+                    settleNet(accepted, remaining);
+                }
+            }
+        });
+    }
+
+    /**
+     * 先校验每笔请求，再对通过校验的请求轧差：轧差后被抵消的转账不会上链，
+     * 所以按请求顺序累计每个付款方在这对地址中的转出金额，不超过其剩余额度的请求才参与轧差
+     */
+    private static List<SettlementRequest> acceptWithin(List<SettlementRequest> requests,
+                                                        Map<String, BigInteger> remaining) {
+        Map<String, BigInteger> outgoing = new LinkedHashMap<>();
+        List<SettlementRequest> accepted = new ArrayList<>();
+        for (SettlementRequest request : requests) {
+            String owner = request.from().toLowerCase(Locale.ROOT);
+            BigInteger total = outgoing.getOrDefault(owner, BigInteger.ZERO).add(request.amount());
+            if (total.compareTo(remaining.get(owner)) > 0) {
+                request.result().completeExceptionally(new IllegalStateException(
+                        "Insufficient balance or allowance of " + request.from() + " for " + request.amount()));
+                continue;
+            }
+            outgoing.put(owner, total);
+            accepted.add(request);
+        }
+        return accepted;
+    }
+
+    /**
+     * 付款方当前可被转出的额度：余额与授权额度中的较小者
+     */
+    private CompletableFuture<BigInteger> spendableBy(String owner, String spender) {
+        try {
+            return erc20Service.balanceOf(owner)
+                    .thenCombine(erc20Service.allowance(owner, spender), BigInteger::min);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void settleNet(List<SettlementRequest> requests, Map<String, BigInteger> remaining) {
+        // 以第一笔请求的方向为正方向
+        String partyA = requests.get(0).from();
+        String partyB = requests.get(0).to();
+        BigInteger net = BigInteger.ZERO;
+        for (SettlementRequest request : requests) {
+            net = request.from().equalsIgnoreCase(partyA) ? net.add(request.amount()) : net.subtract(request.amount());
+        }
+        if (net.signum() == 0 || partyA.equalsIgnoreCase(partyB)) {
+            requests.forEach(request -> request.result().complete(new SettlementResult(
+                    request.from(), request.to(), request.amount(), SettlementResult.NETTED,
+                    null, null, BigInteger.ZERO, null)));
+            return;
+        }
+        String netFrom = net.signum() > 0 ? partyA : partyB;
+        String netTo = net.signum() > 0 ? partyB : partyA;
+        BigInteger netAmount = net.abs();
+        // 净付款方在这对地址中的转出总额已校验不超过剩余额度，净额不会更大
+        remaining.merge(netFrom.toLowerCase(Locale.ROOT), netAmount, BigInteger::subtract);
+        CompletableFuture<TransactionReceipt> transfer;
+        try {
+            transfer = erc20Service.transferFrom(netFrom, netTo, netAmount);
+        } catch (RuntimeException e) {
+            transfer = CompletableFuture.failedFuture(e);
+        }
+        transfer.whenComplete((receipt, error) -> requests.forEach(request -> {
+            if (error != null) {
+                request.result().completeExceptionally(error);
+            } else {
+                request.result().complete(new SettlementResult(
+                        request.from(), request.to(), request.amount(), SettlementResult.SETTLED,
+                        netFrom, netTo, netAmount, receipt));
+            }
+        }));
+    }
+
+    private static String pairKey(String from, String to) {
+        String a = from.toLowerCase(Locale.ROOT);
+        String b = to.toLowerCase(Locale.ROOT);
+        return a.compareTo(b) <= 0 ? a + ":" + b : b + ":" + a;
+    }
+
+    private record SettlementRequest(String from, String to, BigInteger amount,
+                                     CompletableFuture<SettlementResult> result) {
+    }
+
+    /**
+     * 单笔请求的结算结果
+     * @param settlement {@link #SETTLED}：由一笔净额链上交易结算；{@link #NETTED}：双向完全抵消，
+     *                   没有链上交易，netFrom/netTo/receipt为空，只校验过当时的余额和授权额度
+     */
+    public record SettlementResult(String from, String to, BigInteger amount, String settlement,
+                                   String netFrom, String netTo, BigInteger netAmount,
+                                   TransactionReceipt receipt) {
+
+        public static final String SETTLED = "settled";
+
+        public static final String NETTED = "netted";
+    }
+}
@@ -0,0 +1,225 @@
+package com.wetech.demo.web3j.state;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Maps 20-byte addresses to dense int ids. The addresses live back to back in one byte slab
+ * and the hash table is an open-addressing {@code int[]} of ids, so an address costs about
+ * 28 bytes instead of a {@code String} key and map entry. Lookups by raw bytes or by hex
+ * string never allocate. Ids are never reused; not thread-safe.
+ */
+public final class AddressInterner {
+
+    public static final int ADDRESS_LENGTH = 20;
+
+    private static final int HEX_LENGTH = ADDRESS_LENGTH * 2;
+
+    private byte[] slab;
+    /**
+     * id + 1 per slot, 0 for an empty slot
+     */
+    private int[] table;
+    private int mask;
+    private int size;
+
+    public AddressInterner(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        this.slab = new byte[Math.max(16, expectedSize) * ADDRESS_LENGTH];
+    }
+
+    /**
+     * The number of interned addresses; ids run from 0 to {@code size() - 1}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the id of an address
+     * @param address the buffer holding the address
+     * @param offset the index of the first address byte in the buffer
+     * @return the id, or -1 if the address was never interned
+     */
+    public int find(byte[] address, int offset) {
+        for (int slot = hash(address, offset) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (Arrays.equals(slab, (entry - 1) * ADDRESS_LENGTH, entry * ADDRESS_LENGTH,
+                    address, offset, offset + ADDRESS_LENGTH)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Find the id of an address given as hex, with or without {@code 0x} prefix, in any case
+     * @return the id, or -1 if the address was never interned
+     */
+    public int find(CharSequence address) {
+        int start = hexStart(address);
+        for (int slot = hash(address, start) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (hexEquals(entry - 1, address, start)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Get the id of an address, assigning the next id if it is new
+     */
+    public int intern(byte[] address, int offset) {
+        int slot = hash(address, offset) & mask;
+        for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (Arrays.equals(slab, (entry - 1) * ADDRESS_LENGTH, entry * ADDRESS_LENGTH,
+                    address, offset, offset + ADDRESS_LENGTH)) {
+                return entry - 1;
+            }
+        }
+        ensureSlab();
+        System.arraycopy(address, offset, slab, size * ADDRESS_LENGTH, ADDRESS_LENGTH);
+        return insert(slot);
+    }
+
+    /**
+     * Get the id of a hex address, assigning the next id if it is new
+     */
+    public int intern(CharSequence address) {
+        int start = hexStart(address);
+        int slot = hash(address, start) & mask;
+        for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (hexEquals(entry - 1, address, start)) {
+                return entry - 1;
+            }
+        }
+        ensureSlab();
+        int base = size * ADDRESS_LENGTH;
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            slab[base + i] = hexByte(address, start + 2 * i);
+        }
+        return insert(slot);
+    }
+
+    /**
+     * Copy the address of an id into a buffer
+     */
+    public void copyAddress(int id, byte[] into, int offset) {
+        checkId(id);
+        System.arraycopy(slab, id * ADDRESS_LENGTH, into, offset, ADDRESS_LENGTH);
+    }
+
+    /**
+     * The {@code 0x}-prefixed lowercase hex address of an id
+     */
+    public String address(int id) {
+        checkId(id);
+        return "0x" + HexFormat.of().formatHex(slab, id * ADDRESS_LENGTH, (id + 1) * ADDRESS_LENGTH);
+    }
+
+    /**
+     * Whether the address is {@code 0x0}, the counterparty of mints and burns
+     */
+    public static boolean isZeroAddress(byte[] address, int offset) {
+        for (int i = offset; i < offset + ADDRESS_LENGTH; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int insert(int slot) {
+        int id = size++;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private void ensureSlab() {
+        if ((size + 1) * ADDRESS_LENGTH > slab.length) {
+            slab = Arrays.copyOf(slab, slab.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int newMask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(slab, id * ADDRESS_LENGTH) & newMask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & newMask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        table = rehashed;
+        mask = newMask;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No address with id " + id);
+        }
+    }
+
+    private boolean hexEquals(int id, CharSequence address, int start) {
+        int base = id * ADDRESS_LENGTH;
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            if (slab[base + i] != hexByte(address, start + 2 * i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes all 20 bytes: vanity addresses share long zero prefixes, so no single word will do
+     */
+    private static int hash(byte[] address, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + ADDRESS_LENGTH; i++) {
+            h = 31 * h + address[i];
+        }
+        return mix(h);
+    }
+
+    private static int hash(CharSequence address, int start) {
+        int h = 0;
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            h = 31 * h + hexByte(address, start + 2 * i);
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hexStart(CharSequence address) {
+        int start = address.length() >= 2 && address.charAt(0) == '0'
+                && (address.charAt(1) == 'x' || address.charAt(1) == 'X') ? 2 : 0;
+        if (address.length() - start != HEX_LENGTH) {
+            throw new IllegalArgumentException("Not a 20-byte hex address: " + address);
+        }
+        return start;
+    }
+
+    private static byte hexByte(CharSequence hex, int index) {
+        int high = Character.digit(hex.charAt(index), 16);
+        int low = Character.digit(hex.charAt(index + 1), 16);
+        if (high < 0 || low < 0) {
+            throw new IllegalArgumentException("Not a 20-byte hex address: " + hex);
+        }
+        return (byte) (high << 4 | low);
+    }
+}
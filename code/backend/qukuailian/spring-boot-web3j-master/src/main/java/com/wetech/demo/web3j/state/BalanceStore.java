@@ -0,0 +1,200 @@
+package com.wetech.demo.web3j.state;
+
+import com.wetech.demo.web3j.event.Erc20LogRecord;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Token balances of interned holders. A balance below 2^128 is two unsigned {@code long}
+ * words in parallel arrays indexed by holder id; only larger or negative balances (the latter
+ * when replay started after the token's first transfers) fall back to a {@link BigInteger}.
+ * Not thread-safe.
+ */
+public final class BalanceStore {
+
+    private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+
+    private final AddressInterner holders;
+    private long[] low;
+    private long[] high;
+    private final BitSet large = new BitSet();
+    private final Map<Integer, BigInteger> largeBalances = new HashMap<>();
+
+    public BalanceStore(int expectedHolders) {
+        this.holders = new AddressInterner(expectedHolders);
+        this.low = new long[Math.max(16, expectedHolders)];
+        this.high = new long[low.length];
+    }
+
+    public AddressInterner holders() {
+        return holders;
+    }
+
+    /**
+     * Intern a holder address
+     * @return the holder id, or -1 for the zero address, which has no balance
+     */
+    public int holder(byte[] address, int offset) {
+        return AddressInterner.isZeroAddress(address, offset) ? -1 : holders.intern(address, offset);
+    }
+
+    /**
+     * Apply a decoded {@code Transfer} log
+     */
+    public void apply(Erc20LogRecord record) {
+        if (record.getType() != Erc20LogRecord.Type.TRANSFER) {
+            return;
+        }
+        int from = holder(record.getSourceBytes(), 0);
+        int to = holder(record.getTargetBytes(), 0);
+        if (record.valueFitsIn128Bits()) {
+            transfer(from, to, record.getValueWord(2), record.getValueWord(3));
+        } else {
+            transfer(from, to, record.getValue());
+        }
+    }
+
+    /**
+     * Move a value below 2^128 between two holders; a negative id skips that side
+     * @param valueHigh the upper 64 bits of the value
+     * @param valueLow the lower 64 bits of the value
+     */
+    public void transfer(int from, int to, long valueHigh, long valueLow) {
+        if (from >= 0) {
+            debit(from, valueHigh, valueLow);
+        }
+        if (to >= 0) {
+            credit(to, valueHigh, valueLow);
+        }
+    }
+
+    /**
+     * Move an arbitrary value between two holders; a negative id skips that side
+     */
+    public void transfer(int from, int to, BigInteger value) {
+        if (value.signum() >= 0 && value.bitLength() <= 128) {
+            transfer(from, to, value.shiftRight(64).longValue(), value.longValue());
+            return;
+        }
+        if (from >= 0) {
+            setLarge(from, balanceOf(from).subtract(value));
+        }
+        if (to >= 0) {
+            setLarge(to, balanceOf(to).add(value));
+        }
+    }
+
+    /**
+     * The balance of a holder id; zero and balances below 2^63 are returned without building
+     * a {@link BigInteger} from both words
+     */
+    public BigInteger balanceOf(int id) {
+        if (id < 0 || id >= low.length) {
+            return BigInteger.ZERO;
+        }
+        if (large.get(id)) {
+            return largeBalances.get(id);
+        }
+        if (high[id] == 0) {
+            if (low[id] == 0) {
+                return BigInteger.ZERO;
+            }
+            if (low[id] > 0) {
+                return BigInteger.valueOf(low[id]);
+            }
+        }
+        return toBigInteger(high[id], low[id]);
+    }
+
+    /**
+     * The balance of a hex address; zero for unknown holders
+     */
+    public BigInteger balanceOf(CharSequence address) {
+        return balanceOf(holders.find(address));
+    }
+
+    public boolean isZero(int id) {
+        return id < 0 || id >= low.length || !large.get(id) && high[id] == 0 && low[id] == 0;
+    }
+
+    private void credit(int id, long valueHigh, long valueLow) {
+        ensureCapacity(id);
+        if (large.get(id)) {
+            setLarge(id, largeBalances.get(id).add(toBigInteger(valueHigh, valueLow)));
+            return;
+        }
+        long sumLow = low[id] + valueLow;
+        long carry = Long.compareUnsigned(sumLow, low[id]) < 0 ? 1 : 0;
+        long sumHigh = high[id] + valueHigh;
+        boolean overflow = Long.compareUnsigned(sumHigh, high[id]) < 0;
+        sumHigh += carry;
+        overflow |= carry == 1 && sumHigh == 0;
+        if (overflow) {
+            setLarge(id, toBigInteger(high[id], low[id]).add(toBigInteger(valueHigh, valueLow)));
+            return;
+        }
+        low[id] = sumLow;
+        high[id] = sumHigh;
+    }
+
+    private void debit(int id, long valueHigh, long valueLow) {
+        ensureCapacity(id);
+        if (large.get(id)) {
+            setLarge(id, largeBalances.get(id).subtract(toBigInteger(valueHigh, valueLow)));
+            return;
+        }
+        long borrow = Long.compareUnsigned(low[id], valueLow) < 0 ? 1 : 0;
+        int cmp = Long.compareUnsigned(high[id], valueHigh);
+        if (cmp < 0 || cmp == 0 && borrow == 1) {
+            setLarge(id, toBigInteger(high[id], low[id]).subtract(toBigInteger(valueHigh, valueLow)));
+            return;
+        }
+        low[id] -= valueLow;
+        high[id] = high[id] - valueHigh - borrow;
+    }
+
+    /**
+     * Store a BigInteger balance, moving it back to the compact words when it fits again
+     */
+    private void setLarge(int id, BigInteger balance) {
+        ensureCapacity(id);
+        if (balance.signum() >= 0 && balance.bitLength() <= 128) {
+            large.clear(id);
+            largeBalances.remove(id);
+            low[id] = balance.longValue();
+            high[id] = balance.shiftRight(64).longValue();
+        } else {
+            large.set(id);
+            largeBalances.put(id, balance);
+            low[id] = 0;
+            high[id] = 0;
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= low.length) {
+            int length = Math.max(id + 1, low.length * 2);
+            low = Arrays.copyOf(low, length);
+            high = Arrays.copyOf(high, length);
+        }
+    }
+
+    private static BigInteger toBigInteger(long valueHigh, long valueLow) {
+        if (valueHigh == 0 && valueLow >= 0) {
+            return BigInteger.valueOf(valueLow);
+        }
+        BigInteger lowPart = BigInteger.valueOf(valueLow);
+        if (valueLow < 0) {
+            lowPart = lowPart.add(TWO_64);
+        }
+        BigInteger highPart = BigInteger.valueOf(valueHigh);
+        if (valueHigh < 0) {
+            highPart = highPart.add(TWO_64);
+        }
+        return highPart.shiftLeft(64).add(lowPart);
+    }
+}